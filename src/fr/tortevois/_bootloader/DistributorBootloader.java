@@ -1,12 +1,16 @@
 package fr.tortevois._bootloader;
 
 import fr.tortevois.distributor.Distributor;
+import fr.tortevois.transport.MultiplexedHost;
+import fr.tortevois.transport.MultiplexedTransport;
 import fr.tortevois.utils.Utils;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.UnknownHostException;
 
 import static fr.tortevois.utils.Utils.*;
@@ -19,6 +23,8 @@ public class DistributorBootloader {
     public static void main(String[] args) {
         InetAddress address = null;
         int port = 0;
+        int nodesCount = 1;
+        int hostPort = 0; // No multiplexed host: the node has its own sockets
 
         if (args.length < 2) {
             try {
@@ -45,7 +51,7 @@ public class DistributorBootloader {
                 usage();
             }
             port = Integer.parseInt(input);
-        } else if (args.length == 2) {
+        } else if (args.length == 2 || args.length == 4) {
             try {
                 address = InetAddress.getByName(args[0]);
             } catch (UnknownHostException e) {
@@ -59,6 +65,20 @@ public class DistributorBootloader {
                 usage();
             }
             port = Integer.parseInt(args[1]);
+
+            // Several nodes hosted on a single multiplexed port
+            if (args.length == 4) {
+                if (Utils.isNaN(args[2]) || Utils.isNaN(args[3])) {
+                    System.err.println("`nodes_count` or `host_port` is not a number");
+                    usage();
+                }
+                nodesCount = Integer.parseInt(args[2]);
+                hostPort = Integer.parseInt(args[3]);
+                if (nodesCount < 1 || hostPort <= 1024) {
+                    System.err.println("`nodes_count` should be upper than 0 and `host_port` upper than 1024 !");
+                    usage();
+                }
+            }
         } else {
             System.err.println("Unable to start the Gateway: bad arguments");
             System.exit(-1);
@@ -67,7 +87,12 @@ public class DistributorBootloader {
         if (address != null && port > 1024) {
             printTrace(DEBUG, OUT, "Start the Distributor " + address + ":" + port);
             // Create a new gateway and get the distributor
-            Distributor distributor = new Distributor(address, port, TYPE_DEVICE);
+            Distributor distributor;
+            if (hostPort == 0) {
+                distributor = new Distributor(address, port, TYPE_DEVICE);
+            } else {
+                distributor = startMultiplexedNodes(new InetSocketAddress(address, port), nodesCount, hostPort);
+            }
 
             // Load the csv file of products database
             distributor.loadProducts();
@@ -90,8 +115,26 @@ public class DistributorBootloader {
         }
     }
 
+    /**
+     * Start several distributors sharing the sockets of a multiplexed host
+     *
+     * @param gatewayAddress : The gateway socket address
+     * @param nodesCount     : The count of nodes to start
+     * @param hostPort       : The port shared by the nodes
+     * @return The first distributor, for the choices menu
+     */
+    private static Distributor startMultiplexedNodes(SocketAddress gatewayAddress, int nodesCount, int hostPort) {
+        printTrace(DEBUG, OUT, "Start " + nodesCount + " Distributors on the multiplexed port " + hostPort);
+        MultiplexedHost host = new MultiplexedHost(hostPort);
+        Distributor first = new Distributor(new MultiplexedTransport(host), gatewayAddress, TYPE_DEVICE);
+        for (int i = 1; i < nodesCount; i++) {
+            new Distributor(new MultiplexedTransport(host), gatewayAddress, TYPE_DEVICE).loadProducts();
+        }
+        return first;
+    }
+
     private static void usage() {
-        System.err.println("Usage: java Distributor_boot IPv4_address port");
+        System.err.println("Usage: java Distributor_boot IPv4_address port [nodes_count host_port]");
         System.exit(-1);
     }
 
@@ -10,6 +10,8 @@ import java.rmi.registry.LocateRegistry;
 
 import static fr.tortevois.server.IDistributorManager.DISTRIBUTOR_MANAGER_RMI_NAME;
 import static fr.tortevois.server.IDistributorManager.RMI_PORT;
+import static fr.tortevois.server.IDistributorManager.RMI_RESPONSE_TIMEOUT;
+import static fr.tortevois.server.IDistributorManager.RMI_RESPONSE_TIMEOUT_PROPERTY;
 import static fr.tortevois.utils.Utils.*;
 
 public class DistributorManagerBootloader {
@@ -54,6 +56,11 @@ public class DistributorManagerBootloader {
             usage();
         }
 
+        // Bound the calls to a hung gateway: read once by the RMI runtime, set before its first call (unless set on the command line)
+        if (System.getProperty(RMI_RESPONSE_TIMEOUT_PROPERTY) == null) {
+            System.setProperty(RMI_RESPONSE_TIMEOUT_PROPERTY, String.valueOf(RMI_RESPONSE_TIMEOUT));
+        }
+
         // Start the RMI
         try {
             LocateRegistry.createRegistry(RMI_PORT);
@@ -0,0 +1,185 @@
+package fr.tortevois._bootloader;
+
+import fr.tortevois.distributor.Distributor;
+import fr.tortevois.gateway.IRmiGateway;
+import fr.tortevois.gateway.RmiGateway;
+import fr.tortevois.gateway.UdpGateway;
+import fr.tortevois.server.DistributorManager;
+import fr.tortevois.server.IDistributorManager;
+import fr.tortevois.transport.ITransport;
+import fr.tortevois.transport.LoopbackTransport;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketAddress;
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+
+import static fr.tortevois.distributor.Distributor.INITIAL_SOCKET_PORT;
+import static fr.tortevois.server.IDistributorManager.DISTRIBUTOR_MANAGER_RMI_NAME;
+import static fr.tortevois.server.IDistributorManager.RMI_PORT;
+import static fr.tortevois.utils.Utils.*;
+import static fr.tortevois.zigbee.ZigBee.TYPE_DEVICE;
+
+public class LoopbackTreeBootloader {
+
+    private final static boolean DEBUG = true;
+
+    private static int nodesCount = 0;
+
+    /**
+     * Start the DistributorManager and a full tree of nodes in this process, the nodes exchanging over the in-process loopback
+     * The AdminInterface connects to the DistributorManager over RMI, as for a distributed tree
+     * The RMI response timeout is left to the command line (-Dsun.rmi.transport.tcp.responseTimeout=<ms>): it applies to the whole JVM
+     *
+     * @param args : devices_count gateways_count tree_depth
+     */
+    public static void main(String[] args) {
+
+        // Check the arguments
+        if (args.length != 3) {
+            System.err.println("Too few arguments!");
+            usage();
+        }
+        for (String arg : args) {
+            if (isNaN(arg) || Integer.parseInt(arg) < 0) {
+                System.err.println("`" + arg + "` is not a positive number");
+                usage();
+            }
+        }
+        int devices = Integer.parseInt(args[0]);
+        int gateways = Integer.parseInt(args[1]);
+        int depth = Integer.parseInt(args[2]);
+
+        // Start the RMI
+        try {
+            LocateRegistry.createRegistry(RMI_PORT);
+        } catch (RemoteException e) {
+            System.err.println("Unable to get the registry: " + e.getMessage());
+            System.exit(-1);
+        }
+
+        // Get the DistributorManager Singleton, initialize it and bind it with RMI
+        IDistributorManager manager = null;
+        try {
+            manager = DistributorManager.getInstance();
+            manager.initDistributorManager(devices, gateways, depth);
+            Naming.rebind(DISTRIBUTOR_MANAGER_RMI_NAME, manager);
+            printTrace(DEBUG, OUT, "DistributorManager rmi://localhost/" + DISTRIBUTOR_MANAGER_RMI_NAME + " ready");
+        } catch (RemoteException e) {
+            System.err.println("Unable to create the DistributorManager: " + e.getMessage());
+            System.exit(-1);
+        } catch (MalformedURLException e) {
+            System.err.println("DistributorManager URL error");
+            e.printStackTrace();
+            System.exit(-1);
+        }
+
+        // Start the RMI gateways of the first ring, and their subtrees
+        RmiGateway first = null;
+        for (int i = 0; i < gateways; i++) {
+            RmiGateway gateway = startRmiGateway(manager);
+            startSubtree(gateway.getDistributor(), devices, gateways, depth, 1);
+            if (first == null) {
+                first = gateway;
+            }
+        }
+
+        System.out.println("##################################################");
+        System.out.println("#  The loopback tree is started: " + nodesCount + " nodes");
+        System.out.println("#  The RMI Server is now available on port " + RMI_PORT);
+        System.out.println("##################################################");
+        System.out.println();
+
+        // Main run loop
+        // Print the choices menu of the first gateway
+        while (first != null) {
+            try {
+                first.getDistributor().getChoicesMenu();
+            } catch (Exception e) {
+                // Catch ProductStockAlert or TooMuchMoneyAlert and send it to the RMI
+                first.sendMessageToGateway(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Start a RMI gateway, bound and registered on the DistributorManager
+     *
+     * @param manager : The DistributorManager
+     * @return The gateway
+     */
+    private static RmiGateway startRmiGateway(IDistributorManager manager) {
+        RmiGateway gateway = null;
+        try {
+            gateway = new RmiGateway(manager, newTransport());
+            int nodeID = gateway.getDistributor().getNodeID();
+            Naming.rebind(IRmiGateway.GATEWAY_RMI_NAME_PREFIX + nodeID, gateway);
+            manager.registerGateway(nodeID);
+        } catch (RemoteException e) {
+            System.err.println("Unable to create the gateway");
+            e.printStackTrace();
+            System.exit(-1);
+        } catch (MalformedURLException e) {
+            System.err.println("Gateway URL error");
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        gateway.getDistributor().loadProducts();
+        nodesCount++;
+        return gateway;
+    }
+
+    /**
+     * Start the devices and the gateways under a gateway, down to the last ring of the tree
+     *
+     * @param parent   : The parent gateway distributor
+     * @param devices  : The devices count by gateway
+     * @param gateways : The gateways count by gateway
+     * @param depth    : The tree depth
+     * @param level    : The ring of the parent gateway, from 1
+     */
+    private static void startSubtree(Distributor parent, int devices, int gateways, int depth, int level) {
+        if (level >= depth) {
+            return; // The gateways of the last ring have no children
+        }
+        SocketAddress parentAddress = getGatewayAddress(parent.getNodeID());
+        for (int i = 0; i < devices; i++) {
+            Distributor distributor = new Distributor(newTransport(), parentAddress, TYPE_DEVICE);
+            distributor.loadProducts();
+            nodesCount++;
+        }
+        for (int i = 0; i < gateways; i++) {
+            Distributor distributor = new UdpGateway(newTransport(), parentAddress).getDistributor();
+            distributor.loadProducts();
+            nodesCount++;
+            startSubtree(distributor, devices, gateways, depth, level + 1);
+        }
+    }
+
+    /**
+     * Get a transport for a new node
+     *
+     * @return The transport
+     */
+    private static ITransport newTransport() {
+        return new LoopbackTransport();
+    }
+
+    /**
+     * Get the socket address of a gateway
+     *
+     * @param nodeID : The gateway node ID
+     * @return The socket address
+     */
+    private static SocketAddress getGatewayAddress(int nodeID) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), INITIAL_SOCKET_PORT + nodeID);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java StartLoopbackTree devices_count gateways_count tree_depth");
+        System.exit(-1);
+    }
+}
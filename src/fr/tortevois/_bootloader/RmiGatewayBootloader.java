@@ -1,6 +1,7 @@
 package fr.tortevois._bootloader;
 
 import fr.tortevois.distributor.Distributor;
+import fr.tortevois.gateway.IRmiGateway;
 import fr.tortevois.gateway.RmiGateway;
 import fr.tortevois.server.IDistributorManager;
 
@@ -36,7 +37,7 @@ public class RmiGatewayBootloader {
 
         // Get the distributor's nodeID and bind the gateway to RMI
         Distributor distributor = gateway.getDistributor();
-        String name = "gateway_" + distributor.getNodeID();
+        String name = IRmiGateway.GATEWAY_RMI_NAME_PREFIX + distributor.getNodeID();
         try {
             Naming.rebind(name, gateway);
         } catch (RemoteException e) {
@@ -49,6 +50,13 @@ public class RmiGatewayBootloader {
             System.exit(-1);
         }
 
+        // Register the bound gateway to the distributor manager
+        try {
+            manager.registerGateway(distributor.getNodeID());
+        } catch (RemoteException e) {
+            System.err.println("Unable to register the gateway: " + e.getMessage());
+        }
+
         // Load the csv file of products database
         distributor.loadProducts();
 
@@ -1,5 +1,6 @@
 package fr.tortevois.admin;
 
+import fr.tortevois.exception.QueryQueueFull;
 import fr.tortevois.server.IDistributorManager;
 
 import java.lang.reflect.InvocationTargetException;
@@ -12,6 +13,7 @@ import java.util.*;
 import static fr.tortevois.gateway.IGateway.QUERY_GET_MONEY;
 import static fr.tortevois.gateway.IGateway.QUERY_GET_STOCK;
 import static fr.tortevois.server.IDistributorManager.DISTRIBUTOR_MANAGER_RMI_NAME;
+import static fr.tortevois.server.IDistributorManager.NO_QUERY_ID;
 import static fr.tortevois.utils.Utils.*;
 
 public class AdminInterface extends UnicastRemoteObject implements IAdminInterface {
@@ -21,6 +23,9 @@ public class AdminInterface extends UnicastRemoteObject implements IAdminInterfa
     private Map<String, String> commandHelper;
     private IDistributorManager manager;
     private int addressCount;
+    private int queryID = NO_QUERY_ID; // The last query sent
+
+    private final static String OPTION_MAX_STALENESS = "-s";
 
     // -- Singleton -------------------------------------------------------------------------------------------------------------
 
@@ -83,7 +88,10 @@ public class AdminInterface extends UnicastRemoteObject implements IAdminInterfa
      * @throws RemoteException
      */
     public void waitForEndQuery() throws RemoteException {
-        manager.waitForEndQuery();
+        if (queryID != NO_QUERY_ID) {
+            manager.waitForEndQuery(queryID);
+            queryID = NO_QUERY_ID;
+        }
     }
 
     // -- Internal Methods ------------------------------------------------------------------------------------------------------
@@ -126,7 +134,7 @@ public class AdminInterface extends UnicastRemoteObject implements IAdminInterfa
     public void printHelp(String[] args) {
         printTitle("Available command-line list");
         for (Map.Entry<String, String> entry : commandHelper.entrySet()) {
-            System.out.println(String.format("- %-30s %s", entry.getKey(), entry.getValue()));
+            System.out.println(String.format("- %-34s %s", entry.getKey(), entry.getValue()));
         }
     }
 
@@ -138,15 +146,21 @@ public class AdminInterface extends UnicastRemoteObject implements IAdminInterfa
     public void getStock(String[] args) {
         printTrace(DEBUG, OUT, "Invoke getStock with args: " + Arrays.toString(args));
 
+        long maxStaleness = getMaxStalenessFromArgs(args);
+        if (maxStaleness < 0) return;
+        if (maxStaleness > 0) args = Arrays.copyOfRange(args, 2, args.length);
+
         if (args.length < 1) return;
 
         List<Integer> nodesID = getNodesIDFromArgs(args);
         if (nodesID.size() >= 1) {
             try {
-                manager.sendMessageToRMI(QUERY_GET_STOCK, nodesID);
+                queryID = manager.sendMessageToRMI(QUERY_GET_STOCK, nodesID, maxStaleness);
             } catch (RemoteException e) {
                 System.err.println("Unable to request stock");
                 e.printStackTrace();
+            } catch (QueryQueueFull e) {
+                System.err.println("Too many queries in progress, retry later");
             }
         }
     }
@@ -202,19 +216,58 @@ public class AdminInterface extends UnicastRemoteObject implements IAdminInterfa
     public void getMoney(String[] args) {
         printTrace(DEBUG, OUT, "Invoke getMoney with args: " + Arrays.toString(args));
 
+        long maxStaleness = getMaxStalenessFromArgs(args);
+        if (maxStaleness < 0) return;
+        if (maxStaleness > 0) args = Arrays.copyOfRange(args, 2, args.length);
+
         if (args.length < 1) return;
 
         List<Integer> nodesID = getNodesIDFromArgs(args);
         if (nodesID.size() >= 1) {
             try {
-                manager.sendMessageToRMI(QUERY_GET_MONEY, nodesID);
+                queryID = manager.sendMessageToRMI(QUERY_GET_MONEY, nodesID, maxStaleness);
             } catch (RemoteException e) {
                 System.err.println("Unable to request stock");
                 e.printStackTrace();
+            } catch (QueryQueueFull e) {
+                System.err.println("Too many queries in progress, retry later");
             }
         }
     }
 
+    /**
+     * Display the DistributorManager statistics
+     *
+     * @param args Useless, just to simplify the invoke by introspection
+     */
+    public void displayStatistics(String[] args) {
+        printTrace(DEBUG, OUT, "Invoke displayStatistics with args: " + Arrays.toString(args));
+
+        try {
+            manager.displayStatistics();
+        } catch (RemoteException e) {
+            System.err.println("Unable to display the statistics");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Extract the max staleness option (-s seconds) from the arguments
+     *
+     * @param args An array of arguments passed in CLI
+     * @return The max staleness in milliseconds, 0 without option or -1 on error
+     */
+    private long getMaxStalenessFromArgs(String[] args) {
+        if (args.length < 1 || !args[0].equals(OPTION_MAX_STALENESS)) {
+            return 0;
+        }
+        if (args.length < 2 || isNaN(args[1]) || Integer.parseInt(args[1]) <= 0) {
+            System.err.println("The max staleness should be a number of seconds upper than 0");
+            return -1;
+        }
+        return Integer.parseInt(args[1]) * 1000L;
+    }
+
     /**
      * Convert an array of nodesID arguments to an nodesID list
      *
@@ -264,6 +317,7 @@ public class AdminInterface extends UnicastRemoteObject implements IAdminInterfa
             commandCallback.put("get_stock", "getStock");
             commandCallback.put("help", "printHelp");
             commandCallback.put("logs", "displayLogsHistory");
+            commandCallback.put("stats", "displayStatistics");
         }
     }
 
@@ -274,10 +328,11 @@ public class AdminInterface extends UnicastRemoteObject implements IAdminInterfa
         if (commandHelper == null) {
             commandHelper = new TreeMap<>();
             commandHelper.put("free all | nodesID", "Free all the RMI gateways' nodesID passed in arguments");
-            commandHelper.put("get_money all | nodesID", "Get the money for all the distributors' nodesID passed in arguments");
-            commandHelper.put("get_stock all | nodesID", "Get the stock for all the distributors' nodesID passed in arguments");
+            commandHelper.put("get_money [-s sec] all | nodesID", "Get the money for all the distributors' nodesID passed in arguments, from the cache if not older than -s");
+            commandHelper.put("get_stock [-s sec] all | nodesID", "Get the stock for all the distributors' nodesID passed in arguments, from the cache if not older than -s");
             commandHelper.put("help", "Print the command helper");
             commandHelper.put("logs", "Display the logs history");
+            commandHelper.put("stats", "Display the DistributorManager and its RMI gateways statistics");
         }
     }
 }
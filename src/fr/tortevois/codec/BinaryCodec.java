@@ -0,0 +1,527 @@
+package fr.tortevois.codec;
+
+import fr.tortevois.message.MessageType;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class BinaryCodec {
+
+    // A binary frame starts with FRAME_TAG, never the first byte of a JSON frame nor of a transport header:
+    // FRAME_TAG, message type, fields count, then the fields. A frame is self-delimited, the frames of a batch follow each other
+    public final static byte FRAME_TAG = 0x02;
+
+    // The known keys, by their one-byte code: append only, the index is the wire code (0 for a key written as a string)
+    private final static String[] KEYS = {
+            null,
+            "query", "query_id", "querying_nodes_id", "deadline", "status", "node_id", "distributor_id",
+            "distributor_money", "distributor_stock", "id", "quantity", "sequence", "full", "log",
+            "token", "reply_address", "reply_port", "device_type", "host_port", "encoding", "devices", "gateways", "depth",
+            "querying_nodes_ranges", "querying_nodes_bitmap", "stock_version", "stock_base", "keep_alive", "budget", "stock_version_offsets"
+    };
+    private final static Map<String, Integer> keyCodes = getCodes(KEYS);
+
+    // Value tags, shared with the streaming reader and writer
+    final static byte TAG_NULL = 0;
+    final static byte TAG_FALSE = 1;
+    final static byte TAG_TRUE = 2;
+    final static byte TAG_LONG = 3; // Zigzag varint
+    final static byte TAG_DOUBLE = 4; // 8 bytes
+    final static byte TAG_STRING = 5; // Varint length, UTF-8 bytes
+    final static byte TAG_LONG_ARRAY = 6; // Varint count, packed zigzag varints (node IDs, stock ids and quantities)
+    final static byte TAG_ARRAY = 7; // Varint count, tagged values
+    final static byte TAG_OBJECT = 8; // Varint count, fields
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Build the codes table of the keys
+     *
+     * @param names : The keys, by code
+     * @return The codes, by key
+     */
+    private static Map<String, Integer> getCodes(String[] names) {
+        Map<String, Integer> codes = new HashMap<>();
+        for (int code = 1; code < names.length; code++) {
+            codes.put(names[code], code);
+        }
+        return codes;
+    }
+
+    /**
+     * Get the code of a key
+     *
+     * @param key : The key
+     * @return The code, or 0 for a key written as a string
+     */
+    static int getKeyCode(String key) {
+        Integer code = keyCodes.get(key);
+        return (code != null) ? code : 0;
+    }
+
+    /**
+     * Get a key by its code
+     *
+     * @param code : The code, from 1
+     * @return The key
+     */
+    static String getKey(int code) {
+        if (code < 1 || code >= KEYS.length) {
+            throw new IllegalArgumentException("Unknown key code " + code);
+        }
+        return KEYS[code];
+    }
+
+    /**
+     * Get the known key matching a part of a string, without allocation
+     *
+     * @param str    : The string
+     * @param offset : The offset of the key
+     * @param length : The length of the key
+     * @return The key, or null if unknown
+     */
+    static String getKey(String str, int offset, int length) {
+        for (int code = 1; code < KEYS.length; code++) {
+            if (KEYS[code].length() == length && str.startsWith(KEYS[code], offset)) {
+                return KEYS[code];
+            }
+        }
+        return null;
+    }
+
+    // -- Encoding --------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Encode a JSON message into a binary frame
+     *
+     * @param json : The JSON message
+     * @return The binary frame
+     */
+    public static byte[] encode(JSONObject json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(FRAME_TAG);
+        Object query = json.get("query");
+        MessageType type = (query instanceof String) ? MessageType.fromName((String) query) : null;
+        if (type != null) {
+            // The query is the message type byte, not a field
+            out.write(type.getCode());
+            putVarint(out, json.size() - 1);
+            putFields(out, json, "query");
+        } else {
+            out.write(0);
+            putVarint(out, json.size());
+            putFields(out, json, null);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write the fields of a JSON object
+     *
+     * @param out     : The output
+     * @param json    : The JSON object
+     * @param skipKey : A key not to write, or null
+     */
+    private static void putFields(ByteArrayOutputStream out, Map<?, ?> json, String skipKey) {
+        for (Map.Entry<?, ?> entry : json.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            if (key.equals(skipKey)) {
+                continue;
+            }
+            Integer code = keyCodes.get(key);
+            if (code != null) {
+                out.write(code);
+            } else {
+                out.write(0);
+                putString(out, key);
+            }
+            putValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Write a tagged value
+     *
+     * @param out   : The output
+     * @param value : The value, as a JSON value
+     */
+    private static void putValue(ByteArrayOutputStream out, Object value) {
+        if (value == null) {
+            out.write(TAG_NULL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (isIntegral(value)) {
+            out.write(TAG_LONG);
+            putVarint(out, zigzag(((Number) value).longValue()));
+        } else if (value instanceof Number) {
+            out.write(TAG_DOUBLE);
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.write(TAG_OBJECT);
+            putVarint(out, map.size());
+            putFields(out, map, null);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            if (isIntegralList(list)) {
+                out.write(TAG_LONG_ARRAY);
+                putVarint(out, list.size());
+                for (Object element : list) {
+                    putVarint(out, zigzag(((Number) element).longValue()));
+                }
+            } else {
+                out.write(TAG_ARRAY);
+                putVarint(out, list.size());
+                for (Object element : list) {
+                    putValue(out, element);
+                }
+            }
+        } else {
+            out.write(TAG_STRING);
+            putString(out, value.toString());
+        }
+    }
+
+    /**
+     * Check if a value is an integral number
+     *
+     * @param value : The value
+     * @return The boolean status
+     */
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Check if all the elements of a list are integral numbers
+     *
+     * @param list : The list
+     * @return The boolean status
+     */
+    private static boolean isIntegralList(List<?> list) {
+        for (Object element : list) {
+            if (!isIntegral(element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write a string, its UTF-8 length then its UTF-8 bytes
+     *
+     * @param out : The output
+     * @param str : The string
+     */
+    private static void putString(ByteArrayOutputStream out, String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        putVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Write an unsigned varint: 7 bits by byte, the high bit set on all the bytes but the last one
+     *
+     * @param out   : The output
+     * @param value : The unsigned value
+     */
+    private static void putVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Map a signed value to an unsigned one, the small negative values stay small
+     *
+     * @param value : The signed value
+     * @return The unsigned value
+     */
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    // -- Decoding --------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Check if a buffer starts with a binary frame
+     *
+     * @param buffer : The buffer, from its position
+     * @return The boolean status
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        return buffer.hasRemaining() && buffer.get(buffer.position()) == FRAME_TAG;
+    }
+
+    /**
+     * Decode the binary frame at the position of a buffer, the position is moved to the next frame
+     * (the values are the ones of a parsed JSON frame: Long, Double, String, Boolean, JSONArray and JSONObject)
+     *
+     * @param buffer : The buffer, starting with FRAME_TAG
+     * @return The JSON message, or null if the frame is malformed
+     */
+    public static JSONObject decode(ByteBuffer buffer) {
+        try {
+            if (buffer.get() != FRAME_TAG) {
+                return null;
+            }
+            int code = buffer.get() & 0xFF;
+            MessageType type = MessageType.fromCode(code);
+            if (code != 0 && type == null) {
+                return null;
+            }
+            JSONObject json = getFields(buffer, getCount(buffer));
+            if (type != null) {
+                json.put("query", type.getName());
+            }
+            return json;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the fields of a JSON object
+     *
+     * @param buffer : The buffer
+     * @param count  : The fields count
+     * @return The JSON object
+     */
+    private static JSONObject getFields(ByteBuffer buffer, int count) {
+        JSONObject json = new JSONObject();
+        for (int i = 0; i < count; i++) {
+            int code = buffer.get() & 0xFF;
+            String key;
+            if (code == 0) {
+                key = getString(buffer);
+            } else if (code < KEYS.length) {
+                key = KEYS[code];
+            } else {
+                throw new IllegalArgumentException("Unknown key code " + code);
+            }
+            json.put(key, getValue(buffer));
+        }
+        return json;
+    }
+
+    /**
+     * Read a tagged value
+     *
+     * @param buffer : The buffer
+     * @return The value, as a parsed JSON value
+     */
+    private static Object getValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_LONG:
+                return unzigzag(getVarint(buffer));
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(buffer.getLong());
+            case TAG_STRING:
+                return getString(buffer);
+            case TAG_LONG_ARRAY: {
+                int count = getCount(buffer);
+                JSONArray array = new JSONArray();
+                for (int i = 0; i < count; i++) {
+                    array.add(unzigzag(getVarint(buffer)));
+                }
+                return array;
+            }
+            case TAG_ARRAY: {
+                int count = getCount(buffer);
+                JSONArray array = new JSONArray();
+                for (int i = 0; i < count; i++) {
+                    array.add(getValue(buffer));
+                }
+                return array;
+            }
+            case TAG_OBJECT:
+                return getFields(buffer, getCount(buffer));
+            default:
+                throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Read a string, its UTF-8 length then its UTF-8 bytes
+     *
+     * @param buffer : The buffer
+     * @return The string
+     */
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[getCount(buffer)]; // The received datagrams are in direct buffers, without array
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a count: a varint, never more than the bytes left (each element takes one byte at least)
+     *
+     * @param buffer : The buffer
+     * @return The count
+     */
+    static int getCount(ByteBuffer buffer) {
+        long count = getVarint(buffer);
+        if (count > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return (int) count;
+    }
+
+    /**
+     * Read an unsigned varint
+     *
+     * @param buffer : The buffer
+     * @return The unsigned value
+     */
+    static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 64 bits");
+    }
+
+    /**
+     * Map back an unsigned value to the signed one
+     *
+     * @param value : The unsigned value
+     * @return The signed value
+     */
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // -- Peeking ---------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Get the message type of a binary frame, read from its type byte without decoding the fields
+     *
+     * @param frame : The binary frame
+     * @return The message type, or null for a message without a known type
+     */
+    public static MessageType getMessageType(byte[] frame) {
+        if (frame.length < 2 || frame[0] != FRAME_TAG) {
+            return null;
+        }
+        return MessageType.fromCode(frame[1] & 0xFF);
+    }
+
+    /**
+     * Get the length of the binary frame at the position of a buffer: its fields are skipped, not decoded
+     * (the position is not moved)
+     *
+     * @param buffer : The buffer, starting with FRAME_TAG
+     * @return The length in bytes, or -1 if the frame is malformed
+     */
+    public static int getFrameLength(ByteBuffer buffer) {
+        ByteBuffer frame = buffer.duplicate();
+        try {
+            int code;
+            if (frame.get() != FRAME_TAG || ((code = frame.get() & 0xFF) != 0 && MessageType.fromCode(code) == null)) {
+                return -1;
+            }
+            skipFields(frame, getCount(frame));
+            return frame.position() - buffer.position();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Skip the fields of a JSON object
+     *
+     * @param buffer : The buffer
+     * @param count  : The fields count
+     */
+    private static void skipFields(ByteBuffer buffer, int count) {
+        for (int i = 0; i < count; i++) {
+            int code = buffer.get() & 0xFF;
+            if (code == 0) {
+                skipBytes(buffer, getCount(buffer));
+            } else if (code >= KEYS.length) {
+                throw new IllegalArgumentException("Unknown key code " + code);
+            }
+            skipValue(buffer);
+        }
+    }
+
+    /**
+     * Skip a tagged value
+     *
+     * @param buffer : The buffer
+     */
+    static void skipValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case TAG_NULL:
+            case TAG_FALSE:
+            case TAG_TRUE:
+                break;
+            case TAG_LONG:
+                getVarint(buffer);
+                break;
+            case TAG_DOUBLE:
+                skipBytes(buffer, Double.BYTES);
+                break;
+            case TAG_STRING:
+                skipBytes(buffer, getCount(buffer));
+                break;
+            case TAG_LONG_ARRAY: {
+                int count = getCount(buffer);
+                for (int i = 0; i < count; i++) {
+                    getVarint(buffer);
+                }
+                break;
+            }
+            case TAG_ARRAY: {
+                int count = getCount(buffer);
+                for (int i = 0; i < count; i++) {
+                    skipValue(buffer);
+                }
+                break;
+            }
+            case TAG_OBJECT:
+                skipFields(buffer, getCount(buffer));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Skip some bytes
+     *
+     * @param buffer : The buffer
+     * @param length : The bytes count
+     */
+    static void skipBytes(ByteBuffer buffer, int length) {
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        buffer.position(buffer.position() + length);
+    }
+}
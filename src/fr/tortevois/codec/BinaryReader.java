@@ -0,0 +1,124 @@
+package fr.tortevois.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static fr.tortevois.codec.BinaryCodec.*;
+
+public class BinaryReader implements MessageReader {
+
+    private final static int MAX_DEPTH = 8;
+
+    private final ByteBuffer buffer;
+    private final int[] remaining = new int[MAX_DEPTH]; // The fields left to read in the open objects
+    private int depth = 0;
+
+    /**
+     * The binary reader's constructor: the fields are read one by one, straight into the fields of a typed message
+     *
+     * @param frame : The binary frame, its FRAME_TAG and message type already checked
+     */
+    public BinaryReader(byte[] frame) {
+        this.buffer = ByteBuffer.wrap(frame, 2, frame.length - 2);
+        openObject();
+    }
+
+    /**
+     * Read the key of the next field of the current object
+     *
+     * @return The key, or null at the end of the object
+     */
+    public String nextKey() {
+        if (remaining[depth - 1] == 0) {
+            depth--;
+            return null;
+        }
+        remaining[depth - 1]--;
+        int code = buffer.get() & 0xFF;
+        if (code != 0) {
+            return getKey(code);
+        }
+        byte[] keyBytes = new byte[getCount(buffer)];
+        buffer.get(keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the value of the field as an integral number
+     *
+     * @return The value
+     */
+    public long readLong() {
+        byte tag = buffer.get();
+        switch (tag) {
+            case TAG_LONG:
+                return unzigzag(getVarint(buffer));
+            case TAG_DOUBLE:
+                return (long) Double.longBitsToDouble(buffer.getLong());
+            default:
+                throw new IllegalArgumentException("Not a number, tag " + tag);
+        }
+    }
+
+    /**
+     * Read the value of the field as a floating point number
+     *
+     * @return The value
+     */
+    public double readDouble() {
+        byte tag = buffer.get();
+        switch (tag) {
+            case TAG_LONG:
+                return unzigzag(getVarint(buffer));
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(buffer.getLong());
+            default:
+                throw new IllegalArgumentException("Not a number, tag " + tag);
+        }
+    }
+
+    /**
+     * Read the value of the field as an integer array
+     *
+     * @return The values
+     */
+    public int[] readIntArray() {
+        byte tag = buffer.get();
+        if (tag != TAG_LONG_ARRAY) {
+            throw new IllegalArgumentException("Not an integer array, tag " + tag);
+        }
+        int[] values = new int[getCount(buffer)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (int) unzigzag(getVarint(buffer));
+        }
+        return values;
+    }
+
+    /**
+     * Enter the object value of the field
+     */
+    public void beginObject() {
+        byte tag = buffer.get();
+        if (tag != TAG_OBJECT) {
+            throw new IllegalArgumentException("Not an object, tag " + tag);
+        }
+        openObject();
+    }
+
+    /**
+     * Skip the value of the field
+     */
+    public void skipValue() {
+        BinaryCodec.skipValue(buffer);
+    }
+
+    /**
+     * Read the fields count of an object
+     */
+    private void openObject() {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalArgumentException("Objects nested deeper than " + MAX_DEPTH);
+        }
+        remaining[depth++] = getCount(buffer);
+    }
+}
@@ -0,0 +1,172 @@
+package fr.tortevois.codec;
+
+import fr.tortevois.message.MessageType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static fr.tortevois.codec.BinaryCodec.*;
+
+public class BinaryWriter implements MessageWriter {
+
+    private final static int MAX_DEPTH = 8;
+    private final static int MAX_FIELDS_COUNT = 0x7F; // The fields count is patched at the end of its object: one varint byte
+
+    private byte[] bytes = new byte[128];
+    private int size = 0;
+    // The position of the fields count of the open objects, and their fields written so far
+    private final int[] countPositions = new int[MAX_DEPTH];
+    private final int[] counts = new int[MAX_DEPTH];
+    private int depth = 0;
+
+    /**
+     * The binary writer's constructor: the frame is written in the same format as BinaryCodec.encode,
+     * straight from the fields of a typed message
+     *
+     * @param type : The message type
+     */
+    public BinaryWriter(MessageType type) {
+        write(FRAME_TAG);
+        write(type.getCode());
+        openCount();
+    }
+
+    /**
+     * Write an integral field
+     *
+     * @param key   : The key
+     * @param value : The value
+     */
+    public void writeLong(String key, long value) {
+        writeKey(key);
+        write(TAG_LONG);
+        writeVarint(zigzag(value));
+    }
+
+    /**
+     * Write a floating point field
+     *
+     * @param key   : The key
+     * @param value : The value
+     */
+    public void writeDouble(String key, double value) {
+        writeKey(key);
+        write(TAG_DOUBLE);
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            write((int) (bits >>> shift));
+        }
+    }
+
+    /**
+     * Write an integer array field, packed
+     *
+     * @param key    : The key
+     * @param values : The values
+     */
+    public void writeIntArray(String key, int[] values) {
+        writeKey(key);
+        write(TAG_LONG_ARRAY);
+        writeVarint(values.length);
+        for (int value : values) {
+            writeVarint(zigzag(value));
+        }
+    }
+
+    /**
+     * Start an object field
+     *
+     * @param key : The key
+     */
+    public void beginObject(String key) {
+        writeKey(key);
+        write(TAG_OBJECT);
+        openCount();
+    }
+
+    /**
+     * End the object field started last
+     */
+    public void endObject() {
+        closeCount();
+    }
+
+    /**
+     * Get the binary frame
+     *
+     * @return The binary frame
+     */
+    public byte[] toByteArray() {
+        while (depth > 0) {
+            closeCount();
+        }
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Write the key of a field, and count the field in its object
+     *
+     * @param key : The key
+     */
+    private void writeKey(String key) {
+        counts[depth - 1]++;
+        int code = getKeyCode(key);
+        write(code);
+        if (code == 0) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            writeVarint(keyBytes.length);
+            for (byte b : keyBytes) {
+                write(b);
+            }
+        }
+    }
+
+    /**
+     * Keep the byte of the fields count of a new object
+     */
+    private void openCount() {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Objects nested deeper than " + MAX_DEPTH);
+        }
+        countPositions[depth] = size;
+        counts[depth] = 0;
+        depth++;
+        write(0);
+    }
+
+    /**
+     * Patch the fields count of the object ended
+     */
+    private void closeCount() {
+        depth--;
+        if (counts[depth] > MAX_FIELDS_COUNT) {
+            throw new IllegalStateException("More than " + MAX_FIELDS_COUNT + " fields in an object");
+        }
+        bytes[countPositions[depth]] = (byte) counts[depth];
+    }
+
+    /**
+     * Write an unsigned varint
+     *
+     * @param value : The unsigned value
+     */
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    /**
+     * Write a byte
+     *
+     * @param b : The byte, in the low 8 bits
+     */
+    private void write(int b) {
+        if (size == bytes.length) {
+            bytes = Arrays.copyOf(bytes, size * 2);
+        }
+        bytes[size++] = (byte) b;
+    }
+}
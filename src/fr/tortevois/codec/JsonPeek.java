@@ -0,0 +1,125 @@
+package fr.tortevois.codec;
+
+public final class JsonPeek {
+
+    private JsonPeek() {
+    }
+
+    /**
+     * Get a string value of the top level object of a JSON frame with a lightweight scan, without parsing the frame:
+     * the other values are skipped, nothing is allocated but the returned string
+     *
+     * @param json : The JSON frame
+     * @param key  : The key, without escaped character
+     * @return The string value, or null if it is missing, is not a string, holds an escaped character, or if the frame is malformed
+     */
+    public static String getString(String json, String key) {
+        try {
+            int i = skipWhitespaces(json, 0);
+            if (json.charAt(i) != '{') {
+                return null;
+            }
+            i = skipWhitespaces(json, i + 1);
+            if (json.charAt(i) == '}') {
+                return null;
+            }
+            while (true) {
+                if (json.charAt(i) != '"') {
+                    return null;
+                }
+                int keyEnd = skipString(json, i);
+                boolean isKey = (keyEnd - i - 2 == key.length()) && json.startsWith(key, i + 1);
+                i = skipWhitespaces(json, keyEnd);
+                if (json.charAt(i) != ':') {
+                    return null;
+                }
+                i = skipWhitespaces(json, i + 1);
+                if (isKey) {
+                    if (json.charAt(i) != '"') {
+                        return null;
+                    }
+                    int valueEnd = skipString(json, i);
+                    String value = json.substring(i + 1, valueEnd - 1);
+                    return (value.indexOf('\\') == -1) ? value : null;
+                }
+                i = skipWhitespaces(json, skipValue(json, i));
+                if (json.charAt(i) != ',') {
+                    return null; // End of the object, the key is missing
+                }
+                i = skipWhitespaces(json, i + 1);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Skip the whitespaces
+     *
+     * @param json : The JSON frame
+     * @param i    : The index
+     * @return The index of the next non whitespace character
+     */
+    static int skipWhitespaces(String json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skip a string
+     *
+     * @param json : The JSON frame
+     * @param i    : The index of the opening quote
+     * @return The index after the closing quote
+     */
+    static int skipString(String json, int i) {
+        i++;
+        while (true) {
+            char c = json.charAt(i++);
+            if (c == '"') {
+                return i;
+            } else if (c == '\\') {
+                i++; // The escaped character, a quote included
+            }
+        }
+    }
+
+    /**
+     * Skip a value: a string, an object or an array with their nested values, or a literal
+     *
+     * @param json : The JSON frame
+     * @param i    : The index of the value
+     * @return The index after the value
+     */
+    static int skipValue(String json, int i) {
+        char c = json.charAt(i);
+        if (c == '"') {
+            return skipString(json, i);
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (true) {
+                c = json.charAt(i);
+                if (c == '"') {
+                    i = skipString(json, i);
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        return i + 1;
+                    }
+                }
+                i++;
+            }
+        }
+        // A number, true, false or null
+        while (i < json.length() && (c = json.charAt(i)) != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+            i++;
+        }
+        return i;
+    }
+}
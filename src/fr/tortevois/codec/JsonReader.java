@@ -0,0 +1,149 @@
+package fr.tortevois.codec;
+
+import java.util.Arrays;
+
+import static fr.tortevois.codec.JsonPeek.skipString;
+import static fr.tortevois.codec.JsonPeek.skipWhitespaces;
+
+public class JsonReader implements MessageReader {
+
+    private final String json;
+    private int i; // The index of the next character to read
+
+    /**
+     * The JSON reader's constructor: the fields are read one by one, straight into the fields of a typed message,
+     * without building a JSON object
+     *
+     * @param json : The JSON frame
+     */
+    public JsonReader(String json) {
+        this.json = json;
+        this.i = skipWhitespaces(json, 0);
+        expect('{');
+    }
+
+    /**
+     * Read the key of the next field of the current object
+     *
+     * @return The key, or null at the end of the object
+     */
+    public String nextKey() {
+        i = skipWhitespaces(json, i);
+        char c = json.charAt(i);
+        if (c == '}') {
+            i++;
+            return null;
+        }
+        if (c == ',') {
+            i = skipWhitespaces(json, i + 1);
+        }
+        if (json.charAt(i) != '"') {
+            throw new IllegalArgumentException("Expected a key at " + i);
+        }
+        int keyEnd = skipString(json, i);
+        String key = BinaryCodec.getKey(json, i + 1, keyEnd - i - 2);
+        if (key == null) {
+            key = json.substring(i + 1, keyEnd - 1); // An unknown key, only skipped: its escapes are kept
+        }
+        i = skipWhitespaces(json, keyEnd);
+        expect(':');
+        i = skipWhitespaces(json, i);
+        return key;
+    }
+
+    /**
+     * Read the value of the field as an integral number
+     *
+     * @return The value
+     */
+    public long readLong() {
+        int start = i;
+        boolean isNegative = json.charAt(i) == '-';
+        if (isNegative) {
+            i++;
+        }
+        long value = 0;
+        int digitsStart = i;
+        char c;
+        while (i < json.length() && (c = json.charAt(i)) >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            i++;
+        }
+        if (i == digitsStart) {
+            throw new IllegalArgumentException("Expected a number at " + start);
+        }
+        if (i < json.length() && ((c = json.charAt(i)) == '.' || c == 'e' || c == 'E')) {
+            i = start;
+            return (long) readDouble();
+        }
+        return isNegative ? -value : value;
+    }
+
+    /**
+     * Read the value of the field as a floating point number
+     *
+     * @return The value
+     */
+    public double readDouble() {
+        int start = i;
+        i = JsonPeek.skipValue(json, i);
+        return Double.parseDouble(json.substring(start, i));
+    }
+
+    /**
+     * Read the value of the field as an integer array
+     *
+     * @return The values
+     */
+    public int[] readIntArray() {
+        expect('[');
+        int[] values = new int[16];
+        int count = 0;
+        i = skipWhitespaces(json, i);
+        if (json.charAt(i) == ']') {
+            i++;
+            return new int[0];
+        }
+        while (true) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = (int) readLong();
+            i = skipWhitespaces(json, i);
+            char c = json.charAt(i++);
+            if (c == ']') {
+                return Arrays.copyOf(values, count);
+            }
+            if (c != ',') {
+                throw new IllegalArgumentException("Expected , or ] at " + (i - 1));
+            }
+            i = skipWhitespaces(json, i);
+        }
+    }
+
+    /**
+     * Enter the object value of the field
+     */
+    public void beginObject() {
+        expect('{');
+    }
+
+    /**
+     * Skip the value of the field
+     */
+    public void skipValue() {
+        i = JsonPeek.skipValue(json, i);
+    }
+
+    /**
+     * Read an expected character
+     *
+     * @param expected : The expected character
+     */
+    private void expect(char expected) {
+        if (json.charAt(i) != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " at " + i);
+        }
+        i++;
+    }
+}
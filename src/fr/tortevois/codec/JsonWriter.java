@@ -0,0 +1,107 @@
+package fr.tortevois.codec;
+
+import fr.tortevois.message.MessageType;
+
+public class JsonWriter implements MessageWriter {
+
+    private final StringBuilder json = new StringBuilder(128);
+    private boolean hasFields = true; // The query is the first field
+    private int depth = 1;
+
+    /**
+     * The JSON writer's constructor: the frame is written straight from the fields of a typed message,
+     * without building a JSON object (it is read back by JSONParser as well)
+     *
+     * @param type : The message type
+     */
+    public JsonWriter(MessageType type) {
+        json.append("{\"query\":\"").append(type.getName()).append('"');
+    }
+
+    /**
+     * Write an integral field
+     *
+     * @param key   : The key
+     * @param value : The value
+     */
+    public void writeLong(String key, long value) {
+        writeKey(key);
+        json.append(value);
+    }
+
+    /**
+     * Write a floating point field
+     *
+     * @param key   : The key
+     * @param value : The value
+     */
+    public void writeDouble(String key, double value) {
+        writeKey(key);
+        json.append(value);
+    }
+
+    /**
+     * Write an integer array field
+     *
+     * @param key    : The key
+     * @param values : The values
+     */
+    public void writeIntArray(String key, int[] values) {
+        writeKey(key);
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(values[i]);
+        }
+        json.append(']');
+    }
+
+    /**
+     * Start an object field
+     *
+     * @param key : The key
+     */
+    public void beginObject(String key) {
+        writeKey(key);
+        json.append('{');
+        hasFields = false;
+        depth++;
+    }
+
+    /**
+     * End the object field started last
+     */
+    public void endObject() {
+        json.append('}');
+        hasFields = true;
+        depth--;
+    }
+
+    /**
+     * Get the JSON frame
+     *
+     * @return The JSON frame
+     */
+    @Override
+    public String toString() {
+        while (depth > 0) {
+            endObject();
+        }
+        return json.toString();
+    }
+
+    /**
+     * Write the key of a field (the keys of the typed messages don't need escaping)
+     *
+     * @param key : The key
+     */
+    private void writeKey(String key) {
+        if (hasFields) {
+            json.append(',');
+        }
+        json.append('"').append(key).append("\":");
+        hasFields = true;
+    }
+}
@@ -0,0 +1,43 @@
+package fr.tortevois.codec;
+
+public interface MessageReader {
+
+    /**
+     * Read the key of the next field of the current object
+     * (a known key is returned as the shared constant string, without allocation)
+     *
+     * @return The key, or null at the end of the object
+     */
+    String nextKey();
+
+    /**
+     * Read the value of the field as an integral number
+     *
+     * @return The value
+     */
+    long readLong();
+
+    /**
+     * Read the value of the field as a floating point number
+     *
+     * @return The value
+     */
+    double readDouble();
+
+    /**
+     * Read the value of the field as an integer array
+     *
+     * @return The values
+     */
+    int[] readIntArray();
+
+    /**
+     * Enter the object value of the field: nextKey then reads its fields, until its end
+     */
+    void beginObject();
+
+    /**
+     * Skip the value of the field
+     */
+    void skipValue();
+}
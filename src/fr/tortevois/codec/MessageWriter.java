@@ -0,0 +1,40 @@
+package fr.tortevois.codec;
+
+public interface MessageWriter {
+
+    /**
+     * Write an integral field
+     *
+     * @param key   : The key
+     * @param value : The value
+     */
+    void writeLong(String key, long value);
+
+    /**
+     * Write a floating point field
+     *
+     * @param key   : The key
+     * @param value : The value
+     */
+    void writeDouble(String key, double value);
+
+    /**
+     * Write an integer array field
+     *
+     * @param key    : The key
+     * @param values : The values
+     */
+    void writeIntArray(String key, int[] values);
+
+    /**
+     * Start an object field: the next fields are written into it until endObject
+     *
+     * @param key : The key
+     */
+    void beginObject(String key);
+
+    /**
+     * End the object field started last
+     */
+    void endObject();
+}
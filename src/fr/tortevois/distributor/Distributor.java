@@ -1,12 +1,21 @@
 package fr.tortevois.distributor;
 
+import fr.tortevois.codec.BinaryCodec;
+import fr.tortevois.codec.JsonPeek;
 import fr.tortevois.exception.ProductNotAvailable;
 import fr.tortevois.exception.ProductNotFound;
 import fr.tortevois.exception.ProductStockAlert;
 import fr.tortevois.exception.TooMuchMoneyAlert;
-import fr.tortevois.socket.ListeningSocket;
-import fr.tortevois.socket.SendingSocket;
+import fr.tortevois.message.Message;
+import fr.tortevois.message.MessageType;
+import fr.tortevois.message.MoneyReply;
+import fr.tortevois.message.QueryMessage;
+import fr.tortevois.message.Reply;
+import fr.tortevois.message.StockReply;
+import fr.tortevois.transport.ITransport;
+import fr.tortevois.transport.UdpTransport;
 import fr.tortevois.utils.CSV;
+import fr.tortevois.utils.SharedTimer;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -16,11 +25,17 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static fr.tortevois.distributor.Product.*;
 import static fr.tortevois.gateway.IGateway.*;
+import static fr.tortevois.message.StockReply.NO_STOCK_VERSION;
+import static fr.tortevois.server.IDistributorManager.NO_QUERY_ID;
+import static fr.tortevois.socket.NodeAddress.NO_HOST_PORT;
 import static fr.tortevois.utils.CSV.CSV_EXTENSION;
 import static fr.tortevois.utils.CSV.CSV_SEPARATOR;
 import static fr.tortevois.utils.Utils.*;
@@ -28,72 +43,79 @@ import static fr.tortevois.utils.Utils.*;
 public class Distributor {
 
     private final static boolean DEBUG = true;
+    private final static String STATISTICS_CHOICE = "s";
     public final static String FILENAME_PREFIX = "distributor_";
     public final static String DEFAULT_FILENAME = "default_products_list";
     public final static int INITIAL_SOCKET_PORT = 6000;
-    private final static int DEFAULT_LISTEN_PORT = 8080;
-    private final UUID uID = UUID.randomUUID();
+    private final UUID uID = UUID.randomUUID(); // The correlation token of the join
 
     private int nodeID = -1;
-    private InetAddress gatewayAddress;
-    private int gatewayPort = -1;
-    private ListeningSocket listeningSocket;
-    private SendingSocket sendingSocket;
-    private Thread thread;
+    private SocketAddress gatewaySocketAddress = null; // Built once for all the sends to the gateway
+    private boolean isUplinkBinary = false; // The binary encoding is negotiated with the gateway at the join
+    private final ITransport transport;
 
     private TreeMap<Integer, Product> productsDatabase;
     private double money;
+    private long telemetrySequence = 0; // Incremented on each change pushed to the DistributorManager
+    private long telemetryTime = 0; // The last telemetry push, a keep-alive is pushed when the node is idle
+    private ScheduledFuture<?> keepAlive = null;
+    // The stock version, in milliseconds: increased on each quantity change and brought up to the clock by each stock reply,
+    // so a reply is the stock as of its version, whatever the distributor (the nodes are expected to share the same clock)
+    private long stockVersion = NO_STOCK_VERSION;
+    private long stockLoadVersion = NO_STOCK_VERSION; // The version of the products loading, the oldest base of a delta
 
     /**
-     * Standard Distributor's constructor
+     * Standard Distributor's constructor, over UDP
      *
      * @param address : The gateway's address
      * @param port    : The gateway's port
      * @param type    : The distributor type (to get the local node ID)
      */
     public Distributor(InetAddress address, int port, int type) {
-        this.gatewayAddress = address;
-        this.gatewayPort = port;
-        sendingSocket = new SendingSocket();
+        this(new UdpTransport(), new InetSocketAddress(address, port), type);
+    }
+
+    /**
+     * Standard Distributor's constructor
+     *
+     * @param transport      : The transport to the other nodes
+     * @param gatewayAddress : The gateway's socket address, a NodeAddress for a gateway on a multiplexed host
+     * @param type           : The distributor type (to get the local node ID)
+     */
+    public Distributor(ITransport transport, SocketAddress gatewayAddress, int type) {
+        this.transport = transport;
+        this.gatewaySocketAddress = gatewayAddress;
         try {
             InetAddress clientAddress = InetAddress.getByName(null);
-
-            // Build the query message
-            JSONObject json = new JSONObject();
-            json.put("query", QUERY_GET_NODE_ID);
-            json.put("reply_address", clientAddress.getHostName());
-            json.put("reply_port", DEFAULT_LISTEN_PORT);
-            json.put("device_type", type);
-
-            // Create the socket
-            DatagramSocket socket = null;
-            try {
-                socket = new DatagramSocket(DEFAULT_LISTEN_PORT);
-            } catch (SocketException e) {
-                System.err.println("Unable to create the socket : " + e.getMessage());
-                System.exit(-1);
-            }
-
-            // Create the buffer for the message
-            byte[] buffer = new byte[BUFFER_MAX_SIZE];
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-
-            // Send the query
-            sendingSocket.send(json.toString(), gatewayAddress, gatewayPort);
-            json.clear();
-
-            // Read message from the Gateway
-            socket.receive(packet); // receive is blocking
-            String msg = new String(packet.getData(), 0, packet.getLength());
-            // Close immediately the socket which should be available for the next connexion !
-            socket.close();
+            String token = uID.toString();
+
+            // Send the query and read the reply from the Gateway, on an ephemeral port
+            String msg = transport.request(replyPort -> {
+                // Build the query message
+                JSONObject json = new JSONObject();
+                json.put("query", QUERY_GET_NODE_ID);
+                json.put("token", token);
+                json.put("reply_address", clientAddress.getHostName());
+                json.put("reply_port", replyPort);
+                json.put("device_type", type);
+                if (transport.getHostPort() != NO_HOST_PORT) {
+                    // The node will share the port of its host: the gateway addresses it with its node header
+                    json.put("host_port", transport.getHostPort());
+                }
+                if (BINARY_ENCODING && transport.isBinarySupported()) {
+                    json.put("encoding", ENCODING_BINARY);
+                }
+                return json.toString();
+            }, gatewaySocketAddress, token);
             printTrace(DEBUG, OUT, "Distributor.Read: " + msg);
 
             // Parse the received message
-            json = (JSONObject) new JSONParser().parse(msg);
+            JSONObject json = (JSONObject) new JSONParser().parse(msg);
             String reply = (String) json.get("query");
-            if (reply.equals(REPLY_GET_NODE_ID)) {
+            if (reply.equals(REPLY_GET_NODE_ID) && token.equals(json.get("token"))) {
                 nodeID = jsonGetToInteger("node_id", json); // Integer.parseInt((String) json.get("node_id"));
+                // A gateway without the binary encoding replies without it: JSON is kept
+                isUplinkBinary = ENCODING_BINARY.equals(json.get("encoding"));
             }
         } catch (UnknownHostException e) {
             System.err.println("Unable to get InetAddress");
@@ -116,41 +138,45 @@ public class Distributor {
         JSONObject json = new JSONObject();
         json.put("query", REPLY_NEW_NODE_CONNEXION);
         json.put("node_id", nodeID);
-        sendMessageToGateway(json.toString());
+        sendMessageToGateway(json);
 
-        // Launch the listening UDP socket Thread
-        startTread();
+        // Listen for the messages to the node
+        transport.listen(this, nodeID);
     }
 
     /**
-     * Distributor's constructor for RMI Gateway
+     * Distributor's constructor for RMI Gateway, over UDP
      *
      * @param nodeID : RMI gateway node ID
      */
     public Distributor(int nodeID) {
-        printTrace(DEBUG, OUT, "Set nodeID " + nodeID);
-        this.nodeID = nodeID;
-        sendingSocket = new SendingSocket();
-        // Launch the listening UDP socket Thread
-        startTread();
+        this(new UdpTransport(), nodeID);
     }
 
     /**
-     * Start the listening socket into a thread
+     * Distributor's constructor for RMI Gateway
+     *
+     * @param transport : The transport to the other nodes
+     * @param nodeID    : RMI gateway node ID
      */
-    private void startTread() {
-        listeningSocket = new ListeningSocket(this, (INITIAL_SOCKET_PORT + nodeID));
-        thread = new Thread(listeningSocket);
-        thread.start();
+    public Distributor(ITransport transport, int nodeID) {
+        printTrace(DEBUG, OUT, "Set nodeID " + nodeID);
+        this.transport = transport;
+        this.nodeID = nodeID;
+        // Listen for the messages to the node
+        transport.listen(this, nodeID);
     }
 
     /**
-     * Stop the sockets and the thread
+     * Stop the transport
      */
     public void stop() {
-        listeningSocket.close();
-        thread.interrupt();
-        sendingSocket.close();
+        synchronized (this) {
+            if (keepAlive != null) {
+                keepAlive.cancel(false);
+            }
+        }
+        transport.close();
     }
 
     /**
@@ -163,71 +189,116 @@ public class Distributor {
     }
 
     /**
-     * Get the sending socket
+     * Get the transport
+     *
+     * @return The transport
+     */
+    public ITransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Check if the messages to the gateway are encoded in binary
      *
-     * @return The sending socket
+     * @return The boolean status
      */
-    public SendingSocket getSendingSocket() {
-        return sendingSocket;
+    public boolean isUplinkBinary() {
+        return isUplinkBinary;
     }
 
     /**
-     * The distributor's callback to process a message received on the listening socket
+     * The distributor's callback to process a JSON message received on the listening socket
      *
      * @param msg : the received message
      */
     public void messageProcessing(String msg) {
-        printTrace(DEBUG, OUT, "Distributor.messageProcessing: " + msg);
-        String query;
-
+        MessageType type = MessageType.fromName(JsonPeek.getString(msg, "query"));
+        if (type != null && type.isTyped()) {
+            messageProcessing(Message.fromJson(msg, type), msg);
+            return;
+        }
         try {
-            JSONObject json = (JSONObject) new JSONParser().parse(msg);
-            query = (String) json.get("query");
-            List<Integer> nodesID = getListNodesID(json);
-
-            // Local execution
-            String reply = null;
-            if (nodesID.contains(getNodeID())) {
-                switch (query) {
-                    case QUERY_GET_MONEY:
-                        reply = execQueryGetMoney();
-                        break;
-
-                    case QUERY_GET_STOCK:
-                        reply = execQueryGetStock();
-                        break;
-
-                    default:
-                        printTrace(DEBUG, ERR, "Distributor.messageProcessing? : " + msg + " no implemented");
-                        reply = execReplyBadRequest();
-                        break;
-                }
-            }
+            messageProcessing((JSONObject) new JSONParser().parse(msg), msg);
+        } catch (ParseException e) {
+            System.err.println("Gateway.readMessageFromSocket ParseException: " + e.getMessage());
+        }
+    }
 
-            if (reply == null) {
-                reply = execReplyBadRequest();
-            }
+    /**
+     * The distributor's callback to process a binary frame received on the listening socket
+     *
+     * @param frame : the received binary frame
+     */
+    public void messageProcessing(byte[] frame) {
+        MessageType type = BinaryCodec.getMessageType(frame);
+        if (type != null && type.isTyped()) {
+            messageProcessing(Message.fromBinary(frame), null);
+            return;
+        }
+        JSONObject json = BinaryCodec.decode(ByteBuffer.wrap(frame));
+        if (json == null) {
+            System.err.println("Distributor.messageProcessing: malformed binary frame");
+            return;
+        }
+        messageProcessing(json, null);
+    }
+
+    /**
+     * The distributor's callback to process a typed message
+     *
+     * @param message : the received message, or null if it is malformed
+     * @param msg     : the received JSON frame, or null for a binary frame
+     */
+    public void messageProcessing(Message message, String msg) {
+        if (message == null) {
+            System.err.println("Distributor.messageProcessing: malformed message");
+            return;
+        }
+        printTrace(DEBUG, OUT, "Distributor.messageProcessing: " + ((msg != null) ? msg : message));
 
-            sendMessageToGateway(reply);
+        switch (message.getType()) {
+            case QUERY_GET_MONEY:
+            case QUERY_GET_STOCK:
+                execQuery((QueryMessage) message);
+                break;
 
-        } catch (ParseException e) {
-            System.err.println("Gateway.readMessageFromSocket ParseException: " + e.getMessage());
+            default:
+                printTrace(DEBUG, ERR, "Distributor.messageProcessing? : " + message + " no implemented");
+                break;
         }
     }
 
     /**
-     * Transform a JSON address array to address list
+     * The distributor's callback to process a message without typed model
+     *
+     * @param json : the received message
+     * @param msg  : the received JSON frame, or null for a binary frame
+     */
+    public void messageProcessing(JSONObject json, String msg) {
+        printTrace(DEBUG, ERR, "Distributor.messageProcessing? : " + ((msg != null) ? msg : json) + " no implemented");
+        int queryID = json.containsKey("query_id") ? jsonGetToInteger("query_id", json) : NO_QUERY_ID;
+        sendMessageToGateway(execReplyBadRequest(queryID));
+    }
+
+    /**
+     * Execute a query and send its reply
      *
-     * @param json : The JSON Object from where to extract the address array
-     * @return The address list
-     */
-    public List<Integer> getListNodesID(JSONObject json) {
-        List<Integer> nodesID = new ArrayList<>();
-        JSONArray querying_nodes_id = (JSONArray) json.get("querying_nodes_id");
-        for (Object o : querying_nodes_id) {
-            nodesID.add((int) ((long) o));
+     * @param query : The query
+     */
+    private void execQuery(QueryMessage query) {
+        if (query.isExpired()) {
+            printTrace(DEBUG, ERR, "Distributor.messageProcessing: deadline passed, drop " + query);
+            return;
         }
-        return nodesID;
+
+        // Local execution
+        Reply reply;
+        if (query.isQueried(getNodeID())) {
+            reply = (query.getType() == MessageType.QUERY_GET_MONEY) ? execQueryGetMoney(query.getQueryID()) : execQueryGetStock(query.getQueryID(), query.getStockVersion(getNodeID()));
+        } else {
+            reply = execReplyBadRequest(query.getQueryID());
+        }
+        sendMessageToGateway(reply);
     }
 
     /**
@@ -236,12 +307,72 @@ public class Distributor {
      * @param msg : The message to send
      */
     public void sendMessageToGateway(String msg) {
-        if (gatewayPort == -1) {
-            System.err.println("Fatal Error ! Unable to send a message to the gateway. Port is undefined in this context.");
-            System.exit(-1);
+        if (isUplinkBinary) {
+            // A message built as a string (a log for instance) is parsed to be encoded
+            try {
+                sendMessageToGateway((JSONObject) new JSONParser().parse(msg));
+            } catch (ParseException e) {
+                System.err.println("Unable to encode the message: " + e.getMessage());
+            }
+            return;
+        }
+        checkGatewaySocketAddress();
+        transport.send(msg, gatewaySocketAddress);
+    }
+
+    /**
+     * Send a JSON message to the parent gateway, in the encoding negotiated with it
+     *
+     * @param json : The JSON message to send
+     */
+    public void sendMessageToGateway(JSONObject json) {
+        if (isUplinkBinary) {
+            sendFrameToGateway(BinaryCodec.encode(json));
+        } else {
+            sendMessageToGateway(json.toString());
+        }
+    }
+
+    /**
+     * Send a typed message to the parent gateway, in the encoding negotiated with it
+     *
+     * @param message : The typed message to send
+     */
+    public void sendMessageToGateway(Message message) {
+        if (isUplinkBinary) {
+            sendFrameToGateway(message.toBinary());
+        } else {
+            sendMessageToGateway(message.toJson());
         }
+    }
+
+    /**
+     * Send a binary frame to the parent gateway
+     *
+     * @param frame : The binary frame to send
+     */
+    protected void sendFrameToGateway(byte[] frame) {
+        sendDatagramToGateway(ByteBuffer.wrap(frame));
+    }
+
+    /**
+     * Send encoded frames to the parent gateway, as they are
+     *
+     * @param datagram : The JSON or binary frames
+     */
+    protected void sendDatagramToGateway(ByteBuffer datagram) {
+        checkGatewaySocketAddress();
+        transport.send(datagram, gatewaySocketAddress);
+    }
 
-        sendingSocket.send(msg, gatewayAddress, gatewayPort);
+    /**
+     * Stop if the gateway is unknown (an RMI gateway has no parent gateway)
+     */
+    private void checkGatewaySocketAddress() {
+        if (gatewaySocketAddress == null) {
+            System.err.println("Fatal Error ! Unable to send a message to the gateway. Address is undefined in this context.");
+            System.exit(-1);
+        }
     }
 
     // --- Common Distributor Query execution -----------------------------------------------------------------------------------
@@ -249,42 +380,48 @@ public class Distributor {
     /**
      * Build the reply for QUERY_GET_MONEY
      *
-     * @return The JSON string
+     * @param queryID : The query ID
+     * @return The typed reply
      */
-    public String execQueryGetMoney() {
-        JSONObject json = new JSONObject();
-        json.put("query", REPLY_GET_MONEY);
-        json.put("status", REPLY_STATUS_CONNECTED);
-        json.put("distributor_id", nodeID);
-        json.put("distributor_money", money);
-        return json.toString();
+    public synchronized MoneyReply execQueryGetMoney(int queryID) {
+        return new MoneyReply(queryID, nodeID, money, telemetrySequence);
     }
 
     /**
-     * Build the reply for QUERY_GET_STOCK
+     * Build the reply for QUERY_GET_STOCK: if the querier knows a version of the loaded products,
+     * only the products changed since then, or not modified, else the full stock
      *
-     * @return The JSON string
+     * @param queryID      : The query ID
+     * @param knownVersion : The stock version known by the querier, or NO_STOCK_VERSION
+     * @return The typed reply
      */
-    public String execQueryGetStock() {
-        JSONObject json = new JSONObject();
-        json.put("query", REPLY_GET_STOCK);
-        json.put("status", REPLY_STATUS_CONNECTED);
-        json.put("distributor_id", nodeID);
-        json.put("distributor_stock", getStockToJson());
-        return json.toString();
+    public synchronized StockReply execQueryGetStock(int queryID, long knownVersion) {
+        long baseVersion = (knownVersion >= stockLoadVersion) ? knownVersion : NO_STOCK_VERSION;
+        stockVersion = Math.max(stockVersion, System.currentTimeMillis()); // The next changes are after this reply
+        int[] ids = new int[productsDatabase.size()];
+        int[] quantities = new int[ids.length];
+        int count = 0;
+        for (Product product : productsDatabase.values()) {
+            if (product.getVersion() > baseVersion) {
+                ids[count] = product.getId();
+                quantities[count] = product.getQuantity();
+                count++;
+            }
+        }
+        if (baseVersion != NO_STOCK_VERSION && count == 0) {
+            return new StockReply(queryID, nodeID, telemetrySequence, stockVersion);
+        }
+        return new StockReply(queryID, nodeID, Arrays.copyOf(ids, count), Arrays.copyOf(quantities, count), telemetrySequence, stockVersion, baseVersion);
     }
 
     /**
      * Build the REPLY_STATUS_BAD_REQUEST
      *
-     * @return The JSON string
+     * @param queryID : The query ID
+     * @return The typed reply
      */
-    public String execReplyBadRequest() {
-        JSONObject json = new JSONObject();
-        json.put("query", REPLY_GET_STOCK);
-        json.put("status", REPLY_STATUS_BAD_REQUEST);
-        json.put("distributor_id", nodeID);
-        return json.toString();
+    public StockReply execReplyBadRequest(int queryID) {
+        return new StockReply(queryID, REPLY_STATUS_BAD_REQUEST, nodeID);
     }
 
     // --- Common Distributor functions -----------------------------------------------------------------------------------------
@@ -321,19 +458,31 @@ public class Distributor {
     }
 
     /**
-     * Load the products database
+     * Load the products database, and push it to the DistributorManager
      */
     private void setProductsDatabase(String fileName) {
         printTrace(DEBUG, OUT, "Load product database `" + fileName + "`");
         List<String> lines = CSV.readFile(fileName);
-        productsDatabase = new TreeMap<>();
-        for (String line : lines) {
-            String[] data = line.split(CSV_SEPARATOR);
-            int id = Integer.parseInt(data[PRODUCT_ID]);
-            float price = Float.parseFloat(data[PRODUCT_PRICE]);
-            int quantity = Integer.parseInt(data[PRODUCT_QUANTITY]);
-            productsDatabase.put(id, new Product(id, data[PRODUCT_NAME], price, quantity));
+        JSONObject telemetry;
+        synchronized (this) {
+            productsDatabase = new TreeMap<>();
+            for (String line : lines) {
+                String[] data = line.split(CSV_SEPARATOR);
+                int id = Integer.parseInt(data[PRODUCT_ID]);
+                float price = Float.parseFloat(data[PRODUCT_PRICE]);
+                int quantity = Integer.parseInt(data[PRODUCT_QUANTITY]);
+                productsDatabase.put(id, new Product(id, data[PRODUCT_NAME], price, quantity));
+            }
+            stockLoadVersion = nextStockVersion();
+            for (Product product : productsDatabase.values()) {
+                product.setVersion(stockLoadVersion);
+            }
+            telemetry = buildTelemetry(getStockToJson(), true);
+            if (keepAlive == null) {
+                keepAlive = SharedTimer.getInstance().scheduleAtFixedRate(this::pushKeepAlive, TELEMETRY_KEEP_ALIVE_PERIOD, TELEMETRY_KEEP_ALIVE_PERIOD, TimeUnit.MILLISECONDS);
+            }
         }
+        sendTelemetry(telemetry);
     }
 
     /**
@@ -356,11 +505,19 @@ public class Distributor {
                 BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
                 choice = br.readLine();
             } while (choice.isEmpty());
+            if (choice.equalsIgnoreCase(STATISTICS_CHOICE)) {
+                // The sockets, reassembly, receive engine and dispatcher queue counters of the node
+                System.out.println(transport.getStatistics());
+                System.out.println("Press enter to continue");
+                BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+                br.readLine();
+                return;
+            }
             int productID = Integer.parseInt(choice);
             retrieveOneProduct(productID);
         } catch (
                 NumberFormatException e) {
-            System.err.println("Wrong entry ! Expected a number ...");
+            System.err.println("Wrong entry ! Expected a number or " + STATISTICS_CHOICE + " ...");
         } catch (
                 ProductNotAvailable e) {
             System.err.println("Product isn't available !");
@@ -387,6 +544,7 @@ public class Distributor {
      */
     private void getItemMenuFooter() {
         System.out.println(("----+----------------------------------------------------+-----------+----------------"));
+        System.out.println(String.format("%3s |   %s", STATISTICS_CHOICE, "Transport statistics"));
     }
 
     /**
@@ -399,19 +557,40 @@ public class Distributor {
      * @throws TooMuchMoneyAlert
      */
     private void retrieveOneProduct(int productId) throws ProductNotAvailable, ProductNotFound, ProductStockAlert, TooMuchMoneyAlert {
-        if (productsDatabase.containsKey(productId)) {
-            Product product = productsDatabase.get(productId);
+        Product product;
+        JSONObject telemetry;
+        boolean isStockLow;
+        boolean isMoneyHigh;
+        synchronized (this) {
+            product = productsDatabase.get(productId);
+            if (product == null) {
+                throw new ProductNotFound();
+            }
             product.retrieveOne();
+            product.setVersion(nextStockVersion());
             money += product.getPrice();
-            if (product.getQuantity() < ALERT_STOCK_MIN) {
-                throw new ProductStockAlert(buildLog("The stock is low for " + product.getName()));
-            }
-            if (money > ALERT_MONEY_MAX) {
-                throw new TooMuchMoneyAlert(buildLog("Too much money in the Distributor"));
-            }
-        } else {
-            throw new ProductNotFound();
+            telemetry = buildTelemetry(getProductStockToJson(product), false);
+            isStockLow = product.getQuantity() < ALERT_STOCK_MIN;
+            isMoneyHigh = money > ALERT_MONEY_MAX;
+        }
+        // Sent out of the lock: the queries are not held by the socket
+        sendTelemetry(telemetry);
+        if (isStockLow) {
+            throw new ProductStockAlert(buildLog("The stock is low for " + product.getName()));
         }
+        if (isMoneyHigh) {
+            throw new TooMuchMoneyAlert(buildLog("Too much money in the Distributor"));
+        }
+    }
+
+    /**
+     * Increase the stock version
+     *
+     * @return The new stock version
+     */
+    private long nextStockVersion() {
+        stockVersion = Math.max(stockVersion + 1, System.currentTimeMillis());
+        return stockVersion;
     }
 
     /**
@@ -433,6 +612,76 @@ public class Distributor {
         return json;
     }
 
+    /**
+     * Get the stock of one product to JSON
+     *
+     * @param product : The product
+     * @return The JSON object built
+     */
+    private JSONObject getProductStockToJson(Product product) {
+        JSONObject json = new JSONObject();
+        JSONArray idArray = new JSONArray();
+        JSONArray quantityArray = new JSONArray();
+        idArray.add(product.getId());
+        quantityArray.add(product.getQuantity());
+        json.put("id", idArray);
+        json.put("quantity", quantityArray);
+        return json;
+    }
+
+    /**
+     * Build the telemetry frame of a stock and money change, for the DistributorManager live view (under the lock)
+     *
+     * @param stock  : The JSON stock, full or only the changed products
+     * @param isFull : true if the stock is full, false if it is the change since the previous push
+     * @return The telemetry frame, to be sent out of the lock
+     */
+    private JSONObject buildTelemetry(JSONObject stock, boolean isFull) {
+        JSONObject json = new JSONObject();
+        json.put("query", PUSH_TELEMETRY);
+        json.put("node_id", nodeID);
+        json.put("sequence", ++telemetrySequence);
+        json.put("full", isFull);
+        json.put("distributor_money", money);
+        json.put("distributor_stock", stock);
+        telemetryTime = System.currentTimeMillis();
+        return json;
+    }
+
+    /**
+     * Push a keep-alive telemetry frame if nothing was pushed lately: the live view of the manager
+     * follows the health of the node rather than its sales, and a lost frame is detected from the current sequence
+     */
+    private void pushKeepAlive() {
+        JSONObject json;
+        synchronized (this) {
+            if (System.currentTimeMillis() - telemetryTime < TELEMETRY_KEEP_ALIVE_PERIOD / 2) {
+                return; // A change was pushed lately: at most 1.5 period between two pushes
+            }
+            json = new JSONObject();
+            json.put("query", PUSH_TELEMETRY);
+            json.put("node_id", nodeID);
+            json.put("sequence", telemetrySequence);
+            json.put("keep_alive", true);
+            telemetryTime = System.currentTimeMillis();
+        }
+        try {
+            sendTelemetry(json);
+        } catch (RuntimeException e) {
+            // Don't cancel the next keep-alives
+            System.err.println("Unable to push the keep-alive: " + e);
+        }
+    }
+
+    /**
+     * Send a telemetry frame to the parent gateway
+     *
+     * @param json : The telemetry frame to send
+     */
+    protected void sendTelemetry(JSONObject json) {
+        sendMessageToGateway(json);
+    }
+
     /**
      * Build the log history frame
      *
@@ -1,19 +1,35 @@
 package fr.tortevois.distributor;
 
+import fr.tortevois.codec.BinaryCodec;
+import fr.tortevois.codec.JsonPeek;
 import fr.tortevois.exception.NoNodeIDAvailable;
 import fr.tortevois.gateway.IGateway;
+import fr.tortevois.message.Message;
+import fr.tortevois.message.MessageType;
+import fr.tortevois.message.NodeSet;
+import fr.tortevois.message.QueryMessage;
+import fr.tortevois.message.Reply;
+import fr.tortevois.message.StockReply;
+import fr.tortevois.socket.FrameBatcher;
+import fr.tortevois.socket.NodeAddress;
+import fr.tortevois.transport.ITransport;
 import fr.tortevois.zigbee.ZigBeeException;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.net.UnknownHostException;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import static fr.tortevois.gateway.IGateway.*;
+import static fr.tortevois.socket.NodeAddress.NO_HOST_PORT;
 import static fr.tortevois.utils.Utils.*;
 import static fr.tortevois.zigbee.ZigBee.*;
 
@@ -22,35 +38,42 @@ public class DistributorGateway extends Distributor {
     private final static boolean DEBUG = true;
 
     private IGateway gateway;
-    private int[] networkParameters;
+    private FrameBatcher uplinkBatcher = null; // null for an RMI gateway, or without batching
+    private volatile int[] networkParameters;
     private int[] childrenNodesInformation;
 
     private Map<Integer, Boolean> connectedGateways;
     private Map<Integer, Boolean> connectedDevices;
-    private Map<Integer, InetAddress> clientsAddresses;
+    private Map<Integer, SocketAddress> clientsAddresses; // The listening socket address by node ID
+    private Map<String, Integer> joinedNodesID; // The node ID given by join token, for the join requests sent again
+    private Set<Integer> binaryNodesID; // The children which negotiated the binary encoding
 
     /**
      * Standard DistributorGateway's constructor
      *
-     * @param gateway : The gateway
-     * @param address : The gateway's address
-     * @param port    : The gateway's port
-     * @param type    : The distributor type (to get the local node ID)
+     * @param gateway        : The gateway
+     * @param transport      : The transport to the other nodes
+     * @param gatewayAddress : The parent gateway's socket address, a NodeAddress for a gateway on a multiplexed host
+     * @param type           : The distributor type (to get the local node ID)
      */
-    public DistributorGateway(IGateway gateway, InetAddress address, int port, int type) {
-        super(address, port, type);
+    public DistributorGateway(IGateway gateway, ITransport transport, SocketAddress gatewayAddress, int type) {
+        super(transport, gatewayAddress, type);
         initializeGateway(gateway);
+        if (UPLINK_BATCH_WINDOW > 0) {
+            uplinkBatcher = new FrameBatcher(super::sendDatagramToGateway, BUFFER_MAX_SIZE - DATAGRAM_HEADER_MAX_SIZE, UPLINK_BATCH_WINDOW, isUplinkBinary());
+        }
     }
 
     /**
      * DistributorGateway's constructor for RMI Gateway
      *
-     * @param gateway : The gateway
-     * @param nodeID  : RMI gateway node ID
+     * @param gateway   : The gateway
+     * @param transport : The transport to the other nodes
+     * @param nodeID    : RMI gateway node ID
      */
 
-    public DistributorGateway(IGateway gateway, int nodeID) {
-        super(nodeID);
+    public DistributorGateway(IGateway gateway, ITransport transport, int nodeID) {
+        super(transport, nodeID);
         initializeGateway(gateway);
     }
 
@@ -62,9 +85,12 @@ public class DistributorGateway extends Distributor {
     private void initializeGateway(IGateway gateway) {
         this.gateway = gateway;
         childrenNodesInformation = new int[INTERVAL_COUNT];
-        connectedDevices = new TreeMap<>();
-        connectedGateways = new TreeMap<>();
-        clientsAddresses = new TreeMap<>();
+        // The messages are processed by several workers: the maps are shared between them
+        connectedDevices = new ConcurrentSkipListMap<>();
+        connectedGateways = new ConcurrentSkipListMap<>();
+        clientsAddresses = new ConcurrentSkipListMap<>();
+        joinedNodesID = new HashMap<>();
+        binaryNodesID = new ConcurrentSkipListSet<>();
     }
 
     /**
@@ -122,7 +148,7 @@ public class DistributorGateway extends Distributor {
      *
      * @return An available address (nodes ID)
      */
-    public int getAvailableNodeID(int type) throws NoNodeIDAvailable {
+    public synchronized int getAvailableNodeID(int type) throws NoNodeIDAvailable {
         Map<Integer, Boolean> map = null;
 
         if (type == TYPE_GATEWAY) {
@@ -144,97 +170,196 @@ public class DistributorGateway extends Distributor {
     }
 
     /**
-     * Override the distributor's callback to process a message received on the listening socket
+     * Get the node ID of a joining node: the same node ID for the same join token, an available node ID for a new one
+     *
+     * @param token : The join token, or null for a node sending its join request only once
+     * @param type  : The device type
+     * @return The node ID
+     * @throws NoNodeIDAvailable
+     */
+    private synchronized int getJoiningNodeID(String token, int type) throws NoNodeIDAvailable {
+        Integer nodeID = (token == null) ? null : joinedNodesID.get(token);
+        if (nodeID == null) {
+            nodeID = getAvailableNodeID(type);
+            if (token != null) {
+                joinedNodesID.put(token, nodeID);
+            }
+        } else {
+            printTrace(DEBUG, OUT, "Give again nodeID " + nodeID);
+        }
+        return nodeID;
+    }
+
+    /**
+     * Override the distributor's callback to process a JSON message: a message only forwarded to the gateway
+     * is classified from its query with a lightweight scan, and forwarded as it is without being parsed
      *
      * @param msg : the received message
      */
     @Override
     public void messageProcessing(String msg) {
-        printTrace(DEBUG, OUT, "DistributorGateway.messageProcessing: " + msg);
+        if (!isUplinkBinary() && isForwardedToGateway(MessageType.fromName(JsonPeek.getString(msg, "query")))) {
+            printTrace(DEBUG, OUT, "DistributorGateway.messageProcessing: forward " + msg);
+            gateway.sendMessageToGateway(msg);
+            return;
+        }
+        super.messageProcessing(msg);
+    }
 
-        try {
-            JSONObject json = (JSONObject) new JSONParser().parse(msg);
-            String query = (String) json.get("query");
-
-            switch (query) {
-                case QUERY_GET_NODE_ID:
-                    execQueryNodeID(json);
-                    break;
-
-                case QUERY_NETWORK_PARAMETERS:
-                    execQueryNetworkParameters(json);
-                    break;
-
-                case QUERY_GET_MONEY:
-                case QUERY_GET_STOCK:
-                    treatMessage(json);
-                    break;
-
-                case REPLY_NETWORK_PARAMETERS:
-                    execReplyNetworkParameters(json);
-                    break;
-
-                case REPLY_NEW_NODE_CONNEXION:
-                case REPLY_GET_STOCK:
-                case REPLY_GET_MONEY:
-                case ADD_TO_LOGS_HISTORY:
-                    gateway.sendMessageToGateway(msg);
-                    break;
-
-                default:
-                    printTrace(DEBUG, ERR, "DistributorGateway.messageProcessing? : " + msg + " no implemented");
-                    // TODO execReplyBadRequest();
-                    break;
-            }
-        } catch (ParseException e) {
-            System.err.println("Gateway.readMessageFromSocket ParseException: " + e.getMessage());
+    /**
+     * Override the distributor's callback to process a binary frame: a message only forwarded to the gateway
+     * is classified from its type byte, and forwarded as it is without being decoded
+     *
+     * @param frame : the received binary frame
+     */
+    @Override
+    public void messageProcessing(byte[] frame) {
+        if (isUplinkBinary() && isForwardedToGateway(BinaryCodec.getMessageType(frame))) {
+            printTrace(DEBUG, OUT, "DistributorGateway.messageProcessing: forward a binary frame of " + frame.length + " bytes");
+            sendFrameToGateway(frame);
+            return;
+        }
+        super.messageProcessing(frame);
+    }
+
+    /**
+     * Check if a message is only forwarded to the gateway, without processing
+     *
+     * @param type : The message type, or null if unknown
+     * @return The boolean status
+     */
+    private static boolean isForwardedToGateway(MessageType type) {
+        if (type == null) {
+            return false;
+        }
+        switch (type) {
+            case REPLY_NEW_NODE_CONNEXION:
+            case REPLY_GET_STOCK:
+            case REPLY_GET_MONEY:
+            case ADD_TO_LOGS_HISTORY:
+            case PUSH_TELEMETRY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Override the distributor's callback to process a typed message
+     *
+     * @param message : the received message, or null if it is malformed
+     * @param msg     : the received JSON frame, or null for a binary frame
+     */
+    @Override
+    public void messageProcessing(Message message, String msg) {
+        if (message == null) {
+            System.err.println("DistributorGateway.messageProcessing: malformed message");
+            return;
+        }
+        printTrace(DEBUG, OUT, "DistributorGateway.messageProcessing: " + ((msg != null) ? msg : message));
+
+        switch (message.getType()) {
+            case QUERY_GET_MONEY:
+            case QUERY_GET_STOCK:
+                treatMessage((QueryMessage) message, msg);
+                break;
+
+            case REPLY_GET_STOCK:
+            case REPLY_GET_MONEY:
+                forwardToGateway(message, msg);
+                break;
+
+            default:
+                printTrace(DEBUG, ERR, "DistributorGateway.messageProcessing? : " + message + " no implemented");
+                break;
+        }
+    }
+
+    /**
+     * Override the distributor's callback to process a message without typed model
+     *
+     * @param json : the received message
+     * @param msg  : the received JSON frame, or null for a binary frame
+     */
+    @Override
+    public void messageProcessing(JSONObject json, String msg) {
+        printTrace(DEBUG, OUT, "DistributorGateway.messageProcessing: " + ((msg != null) ? msg : json));
+
+        MessageType type = MessageType.fromName((String) json.get("query"));
+        if (type == null) {
+            printTrace(DEBUG, ERR, "DistributorGateway.messageProcessing? : " + json + " no implemented");
+            return;
+        }
+
+        switch (type) {
+            case QUERY_GET_NODE_ID:
+                execQueryNodeID(json);
+                break;
+
+            case QUERY_NETWORK_PARAMETERS:
+                execQueryNetworkParameters(json);
+                break;
+
+            case REPLY_NETWORK_PARAMETERS:
+                execReplyNetworkParameters(json);
+                break;
+
+            case REPLY_NEW_NODE_CONNEXION:
+            case ADD_TO_LOGS_HISTORY:
+            case PUSH_TELEMETRY:
+                forwardToGateway(json, msg);
+                break;
+
+            default:
+                printTrace(DEBUG, ERR, "DistributorGateway.messageProcessing? : " + json + " no implemented");
+                // TODO execReplyBadRequest();
+                break;
         }
     }
 
     /**
      * Internal pre-treatment of the message
      *
-     * @param json : JSON message to broadcast
+     * @param query : The query to broadcast
+     * @param msg   : The received JSON frame of the query, or null for a binary frame
      */
-    private void treatMessage(JSONObject json) {
-        String query = (String) json.get("query");
-        List<Integer> nodesID = getListNodesID(json);
-        broadcastMessage(json, query, nodesID);
+    private void treatMessage(QueryMessage query, String msg) {
+        if (query.isExpired()) {
+            printTrace(DEBUG, ERR, "DistributorGateway.treatMessage: deadline passed, drop " + query);
+            return;
+        }
+        // A received JSON frame carries the budget left on its sending: encode it again with the budget left now
+        broadcastMessage(query, query.hasDeadline() ? null : msg);
     }
 
     /**
      * Broadcast the message
      *
-     * @param json    : JSON message to broadcast
-     * @param query   : query
-     * @param nodesID : address list of nodes
+     * @param query : The query to broadcast
+     * @param frame : The JSON frame of the query, forwarded as it is to the JSON children, or null to serialize the query
      */
-    public void broadcastMessage(JSONObject json, String query, List<Integer> nodesID) {
+    public void broadcastMessage(QueryMessage query, String frame) {
+        int queryID = query.getQueryID();
+        EncodedFrames encodedFrames = new EncodedFrames(query, frame); // Encoded once for the first child, then shared by all the children
+
         // Local execution
-        if (nodesID.contains(getNodeID())) {
-            String reply = null;
-            switch (query) {
-                case QUERY_GET_MONEY:
-                    reply = execQueryGetMoney();
-                    break;
-                case QUERY_GET_STOCK:
-                    reply = execQueryGetStock();
-                    break;
-            }
-            gateway.sendMessageToGateway(reply);
+        if (query.isQueried(getNodeID())) {
+            Reply reply = (query.getType() == MessageType.QUERY_GET_MONEY) ? execQueryGetMoney(queryID) : execQueryGetStock(queryID, query.getStockVersion(getNodeID()));
+            forwardToGateway(reply, null);
         }
 
         // Send to the children nodesID
-        if (hasChildrenQuery(nodesID)) {
+        NodeSet nodes = query.getNodes();
+        if (hasChildrenQuery(nodes)) {
 
             // Send to the children devices
             for (Map.Entry<Integer, Boolean> entry : connectedDevices.entrySet()) {
                 int deviceNodeID = entry.getKey();
-                if (nodesID.contains(deviceNodeID)) {
+                if (query.isQueried(deviceNodeID)) {
                     if (entry.getValue() == NODE_CONNECTED) {
-                        sendMessageToSocketNodeID(deviceNodeID, json.toString());
+                        sendMessageToSocketNodeID(deviceNodeID, encodedFrames);
                     } else {
-                        execReplyNotConnected(deviceNodeID);
+                        execReplyNotConnected(deviceNodeID, queryID);
                     }
                 }
             }
@@ -242,64 +367,183 @@ public class DistributorGateway extends Distributor {
             // Send to the children gateways
             for (Map.Entry<Integer, Boolean> entry : connectedGateways.entrySet()) {
                 int gatewayNodeID = entry.getKey();
-                if (hasChildrenQuery(gatewayNodeID, nodesID)) {
+                if (hasChildrenQuery(gatewayNodeID, nodes)) {
                     // If the gateway is connected
                     if (entry.getValue() == NODE_CONNECTED) {
-                        sendMessageToSocketNodeID(gatewayNodeID, json.toString());
+                        sendMessageToSocketNodeID(gatewayNodeID, encodedFrames);
                     } else {
-                        execReplyNotConnected(gatewayNodeID);
+                        execReplyNotConnected(gatewayNodeID, queryID);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Override the sending to the parent gateway: pack the frames forwarded upward into fewer datagrams
+     *
+     * @param msg : The message to send
+     */
+    @Override
+    public void sendMessageToGateway(String msg) {
+        if (uplinkBatcher != null && !isUplinkBinary()) {
+            uplinkBatcher.add(msg);
+        } else {
+            super.sendMessageToGateway(msg);
+        }
+    }
+
+    /**
+     * Override the sending of a binary frame to the parent gateway: pack it with the next ones
+     *
+     * @param frame : The binary frame to send
+     */
+    @Override
+    protected void sendFrameToGateway(byte[] frame) {
+        if (uplinkBatcher != null) {
+            uplinkBatcher.add(frame);
+        } else {
+            super.sendFrameToGateway(frame);
+        }
+    }
+
+    /**
+     * Forward a message to the parent gateway, in the encoding of the uplink
+     * (a received JSON frame is forwarded as it is to a JSON parent)
+     *
+     * @param json : The message
+     * @param msg  : The received JSON frame of the message, or null
+     */
+    private void forwardToGateway(JSONObject json, String msg) {
+        if (isUplinkBinary()) {
+            sendMessageToGateway(json);
+        } else {
+            gateway.sendMessageToGateway((msg != null) ? msg : json.toString());
+        }
+    }
+
+    /**
+     * Forward a typed message to the parent gateway, in the encoding of the uplink
+     * (a received JSON frame is forwarded as it is to a JSON parent)
+     *
+     * @param message : The typed message
+     * @param msg     : The received JSON frame of the message, or null
+     */
+    private void forwardToGateway(Message message, String msg) {
+        if (isUplinkBinary()) {
+            sendFrameToGateway(message.toBinary());
+        } else {
+            gateway.sendMessageToGateway((msg != null) ? msg : message.toJson());
+        }
+    }
+
+    /**
+     * Override the telemetry sending: the gateway sends it to its own parent
+     *
+     * @param json : The telemetry frame to send
+     */
+    @Override
+    protected void sendTelemetry(JSONObject json) {
+        forwardToGateway(json, null);
+    }
+
     /**
      * Check if gateway's children are expected (from Interval: Devices + Gateway nodes)
      *
-     * @param nodesID : The recipient address list (nodes ID)
+     * @param nodes : The recipient nodes
      * @return The boolean status
      */
-    private boolean hasChildrenQuery(List<Integer> nodesID) {
-        for (int nodeID : nodesID) {
-            if (nodeID >= childrenNodesInformation[INTERVAL_LOW_LIMIT] && nodeID < childrenNodesInformation[INTERVAL_UPPER_LIMIT]) {
-                return true;
-            }
-        }
-        return false;
+    private boolean hasChildrenQuery(NodeSet nodes) {
+        return nodes.intersects(childrenNodesInformation[INTERVAL_LOW_LIMIT], childrenNodesInformation[INTERVAL_UPPER_LIMIT]);
     }
 
     /**
      * Check if gateway's children are expected (from GatewayNodeID: sub-network interval)
      *
      * @param gatewayNodeID : The gateway address
-     * @param nodesID       : The recipient address list (nodes ID)
+     * @param nodes         : The recipient nodes
      * @return The boolean status
      */
-    private boolean hasChildrenQuery(int gatewayNodeID, List<Integer> nodesID) {
-        for (int nodeID : nodesID) {
-            if (nodeID >= gatewayNodeID && nodeID < gatewayNodeID + childrenNodesInformation[INTERVAL_STEP]) {
-                return true;
-            }
-        }
-        return false;
+    private boolean hasChildrenQuery(int gatewayNodeID, NodeSet nodes) {
+        return nodes.intersects(gatewayNodeID, gatewayNodeID + childrenNodesInformation[INTERVAL_STEP]);
+    }
+
+    /**
+     * Send a JSON message to a node ID, in the encoding negotiated with it
+     *
+     * @param nodeID : The recipient node ID
+     * @param json   : The JSON message
+     */
+    public void sendMessageToSocketNodeID(int nodeID, JSONObject json) {
+        byte[] frame = binaryNodesID.contains(nodeID) ? BinaryCodec.encode(json) : json.toString().getBytes(StandardCharsets.UTF_8);
+        sendFrameToSocketNodeID(nodeID, ByteBuffer.wrap(frame));
+    }
+
+    /**
+     * Send an encoded frame to a node ID, in the encoding negotiated with it
+     *
+     * @param nodeID        : The recipient node ID
+     * @param encodedFrames : The frames of the message, shared with the other recipients
+     */
+    private void sendMessageToSocketNodeID(int nodeID, EncodedFrames encodedFrames) {
+        // Each send consumes its own view of the shared bytes
+        sendFrameToSocketNodeID(nodeID, encodedFrames.get(binaryNodesID.contains(nodeID)).duplicate());
     }
 
     /**
-     * Send a JSON message to a node ID
+     * Send an encoded frame to a node ID, as it is
      *
      * @param nodeID : The recipient node ID
-     * @param json   : The stringify JSON message
+     * @param frame  : The encoded frame
      */
-    public void sendMessageToSocketNodeID(int nodeID, String json) {
-        if (clientsAddresses.containsKey(nodeID)) {
-            InetAddress address = clientsAddresses.get(nodeID);
-            getSendingSocket().send(json, address, INITIAL_SOCKET_PORT + nodeID);
+    private void sendFrameToSocketNodeID(int nodeID, ByteBuffer frame) {
+        SocketAddress address = clientsAddresses.get(nodeID);
+        if (address != null) {
+            getTransport().send(frame, address);
         } else {
             System.err.println("Adresses not registered for nodeID " + nodeID);
         }
     }
 
+    /**
+     * The frames of a message sent to several children, each encoding done once on its first use
+     */
+    private static class EncodedFrames {
+        private final Message message;
+        private final String frame;
+        private ByteBuffer jsonFrame = null;
+        private ByteBuffer binaryFrame = null;
+
+        /**
+         * @param message : The typed message
+         * @param frame   : The JSON frame of the message, or null to serialize the typed message
+         */
+        private EncodedFrames(Message message, String frame) {
+            this.message = message;
+            this.frame = frame;
+        }
+
+        /**
+         * Get the frame in an encoding
+         *
+         * @param isBinary : true for the binary frame, false for the JSON frame
+         * @return The read-only encoded frame
+         */
+        private ByteBuffer get(boolean isBinary) {
+            if (isBinary) {
+                if (binaryFrame == null) {
+                    binaryFrame = ByteBuffer.wrap(message.toBinary()).asReadOnlyBuffer();
+                }
+                return binaryFrame;
+            }
+            if (jsonFrame == null) {
+                String text = (frame != null) ? frame : message.toJson();
+                jsonFrame = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+            }
+            return jsonFrame;
+        }
+    }
+
     /**
      * Execute the QUERY_GET_NODE_ID
      *
@@ -316,11 +560,14 @@ public class DistributorGateway extends Distributor {
 
         int port = jsonGetToInteger("reply_port", json);
         int device_type = jsonGetToInteger("device_type", json);
+        int hostPort = json.containsKey("host_port") ? jsonGetToInteger("host_port", json) : NO_HOST_PORT;
+        String token = (String) json.get("token");
+        boolean isBinary = BINARY_ENCODING && ENCODING_BINARY.equals(json.get("encoding"));
 
         int nodeID = -1;
         try {
-            // Get an Available NodeID
-            nodeID = getAvailableNodeID(device_type);
+            // Get an Available NodeID, or the NodeID already given if the request is sent again
+            nodeID = getJoiningNodeID(token, device_type);
         } catch (NoNodeIDAvailable e) {
             System.err.println("Gateway.execQueryNodeID NoNodeIDAvailable");
         }
@@ -328,12 +575,22 @@ public class DistributorGateway extends Distributor {
         json.clear();
         json.put("query", REPLY_GET_NODE_ID);
         json.put("node_id", nodeID);
+        if (token != null) {
+            json.put("token", token);
+        }
+        if (isBinary) {
+            // Accept the binary encoding: the node and the gateway use it both ways
+            json.put("encoding", ENCODING_BINARY);
+        }
 
         // Reply to the specific address and port number
-        getSendingSocket().send(json.toString(), address, port);
+        getTransport().reply(json.toString(), new InetSocketAddress(address, port));
 
         if (nodeID != -1) {
-            clientsAddresses.put(nodeID, address);
+            if (isBinary) {
+                binaryNodesID.add(nodeID);
+            }
+            clientsAddresses.put(nodeID, NodeAddress.of(address, hostPort, nodeID));
         }
     }
 
@@ -351,20 +608,17 @@ public class DistributorGateway extends Distributor {
         json.put("gateways", networkParameters[NETWORK_GATEWAYS]);
         json.put("depth", networkParameters[NETWORK_DEPTH]);
         // Send it
-        sendMessageToSocketNodeID(nodeID, json.toString());
+        sendMessageToSocketNodeID(nodeID, json);
     }
 
     /**
      * Build the REPLY_GET_STOCK for NOT_CONNECTED distributor
      *
-     * @param nodeID : The node ID of the NOT_CONNECTED distributor
+     * @param nodeID  : The node ID of the NOT_CONNECTED distributor
+     * @param queryID : The query ID
      */
-    public void execReplyNotConnected(int nodeID) {
-        JSONObject json = new JSONObject();
-        json.put("query", REPLY_GET_STOCK);
-        json.put("status", REPLY_STATUS_NOT_CONNECTED);
-        json.put("node_id", nodeID);
-        gateway.sendMessageToGateway(json.toString());
+    public void execReplyNotConnected(int nodeID, int queryID) {
+        forwardToGateway(new StockReply(queryID, REPLY_STATUS_NOT_CONNECTED, nodeID), null);
     }
 
     /**
@@ -13,6 +13,7 @@ public class Product {
     private int id, quantity;
     private float price;
     private String name;
+    private long version = 0; // The stock version of the distributor when the quantity last changed
 
     /**
      * The product constructor's
@@ -65,6 +66,24 @@ public class Product {
         return quantity;
     }
 
+    /**
+     * Get the stock version of the last quantity change
+     *
+     * @return The stock version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Set the stock version of the last quantity change
+     *
+     * @param version : The stock version
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Retrieve one product
      *
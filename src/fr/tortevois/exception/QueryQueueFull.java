@@ -0,0 +1,6 @@
+package fr.tortevois.exception;
+
+public class QueryQueueFull extends Exception {
+    public QueryQueueFull() {
+    }
+}
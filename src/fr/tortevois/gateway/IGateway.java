@@ -10,8 +10,40 @@ public interface IGateway {
 
     // Public constants
     int BUFFER_MAX_SIZE = 1024 * 8; // 8ko
+    int BUFFER_POOL_MAX_SIZE = 32; // Direct receive buffers kept for reuse
+    int RECEIVE_BUFFER_SIZE = 1024 * 256; // 256ko asked for the kernel receive buffer of the listening sockets
+    int PROCESSING_WORKERS = 4; // Threads processing the received messages
+    int PROCESSING_QUEUE_MAX_SIZE = 1024; // Received messages waiting for a worker, the next ones are dropped
+    int UPLINK_BATCH_WINDOW = 500; // Microseconds a frame to the parent gateway waits for the next ones, 0 to send each frame alone
+    int DATAGRAM_HEADER_MAX_SIZE = 64; // Room kept in each datagram for the transport headers
+    int TELEMETRY_KEEP_ALIVE_PERIOD = 10 * 1000; // An idle distributor pushes its sequence, well inside the live TTL of the manager
+
+    // Fragmentation of the messages larger than a datagram
+    int FRAGMENTS_MAX_COUNT = 128; // About 1Mo by message
+    int REASSEMBLY_TABLE_MAX_SIZE = 64; // Incomplete messages kept by listening socket, the oldest is given up first
+    int REASSEMBLY_TIMEOUT = 5000; // Milliseconds an incomplete message waits for its missing fragments
+
+    // Reliable delivery: the datagrams sent in the tree are sequenced, acked and retransmitted
+    boolean RELIABLE_DELIVERY = true;
+    int RELIABLE_INITIAL_RTO = 200; // Retransmission timeout before the first RTT sample of a peer, in milliseconds
+    int RELIABLE_MIN_RTO = 50;
+    int RELIABLE_MAX_RTO = 2000;
+    int RELIABLE_MAX_RETRIES = 5;
+    int RELIABLE_TICK = 10; // Period of the retransmission check, in milliseconds
+    int RELIABLE_WINDOW_MAX_SIZE = 1024; // Datagrams not acked yet by peer
+    int RELIABLE_PEERS_MAX_SIZE = 1024; // Receive windows kept, the least recently used peer is forgotten first
+
+    // Binary encoding of the frames, negotiated between a node and its parent gateway at the join (JSON otherwise)
+    boolean BINARY_ENCODING = true;
+    String ENCODING_BINARY = "binary";
+
+    // Join of a node: the request is sent again until its reply, with a growing and jittered timeout
+    int JOIN_INITIAL_TIMEOUT = 500; // Milliseconds, doubled on each attempt
+    int JOIN_MAX_TIMEOUT = 8000;
+    int JOIN_MAX_ATTEMPTS = 10;
 
     int REPLY_STATUS_CONNECTED = 200;
+    int REPLY_STATUS_NOT_MODIFIED = 304; // The stock didn't change since the version known by the querier
     int REPLY_STATUS_BAD_REQUEST = 400;
     int REPLY_STATUS_NOT_CONNECTED = 404;
 
@@ -31,6 +63,9 @@ public interface IGateway {
     String REPLY_GET_STOCK = "reply_get_stock";
     String REPLY_GET_MONEY = "reply_get_money";
 
+    // Public push
+    String PUSH_TELEMETRY = "push_telemetry";
+
     /**
      * Get the internal Distributor built
      *
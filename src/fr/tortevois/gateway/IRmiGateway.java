@@ -1,19 +1,38 @@
 package fr.tortevois.gateway;
 
+import fr.tortevois.message.NodeSet;
+
 import java.rmi.Remote;
 import java.rmi.RemoteException;
-import java.util.List;
 
 public interface IRmiGateway extends Remote {
 
+    // RMI parameters
+    String GATEWAY_RMI_NAME_PREFIX = "gateway_";
+
+    // Replies batching parameters
+    int REPLY_BATCH_MAX_SIZE = 64;
+    int REPLY_BATCH_WINDOW = 5; // ms
+
     // Available methods on RMI
 
     /**
      * Read a query sent from the RMI (DistributorManager)
      *
-     * @param query   : The query sent
-     * @param nodesID : The address list of node
+     * @param query         : The query sent
+     * @param queryID       : The query ID
+     * @param budget        : The time left to reply, in milliseconds: the deadline on the gateway's own clock
+     * @param nodes         : The queried nodes
+     * @param stockVersions : The stock version known of each queried node, aligned with the node set, or null for the full stocks
+     * @throws RemoteException
+     */
+    void readMessageFromRMI(String query, int queryID, long budget, NodeSet nodes, long[] stockVersions) throws RemoteException;
+
+    /**
+     * Get the transport statistics of the gateway: sockets, receive engine and dispatcher queue
+     *
+     * @return The formatted string
      * @throws RemoteException
      */
-    void readMessageFromRMI(String query, List<Integer> nodesID) throws RemoteException;
+    String getStatistics() throws RemoteException;
 }
\ No newline at end of file
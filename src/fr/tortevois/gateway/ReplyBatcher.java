@@ -0,0 +1,90 @@
+package fr.tortevois.gateway;
+
+import fr.tortevois.server.IDistributorManager;
+import fr.tortevois.utils.SharedTimer;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ReplyBatcher {
+
+    // The RMI calls of all the batchers of the process, one after the other: they block, never on the shared timer
+    private final static ExecutorService sender;
+
+    static {
+        sender = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ReplyBatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final IDistributorManager manager;
+    private final int maxSize;
+    private final long window;
+    private List<String> batch = new ArrayList<>();
+
+    /**
+     * The reply batcher's constructor
+     *
+     * @param manager : The DistributorManager to forward the replies to
+     * @param maxSize : The max count of replies by batch
+     * @param window  : The max time a reply waits in a batch, in milliseconds
+     */
+    public ReplyBatcher(IDistributorManager manager, int maxSize, long window) {
+        this.manager = manager;
+        this.maxSize = maxSize;
+        this.window = window;
+    }
+
+    /**
+     * Add a reply to the current batch, forwarded when the batch is full or at the end of the window
+     *
+     * @param msg : The JSON string reply
+     */
+    public synchronized void add(String msg) {
+        batch.add(msg);
+        if (batch.size() >= maxSize) {
+            sendBatch();
+        } else if (batch.size() == 1) {
+            // First reply of the batch: open the window
+            SharedTimer.getInstance().schedule(this::flush, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Forward the current batch
+     */
+    public synchronized void flush() {
+        if (!batch.isEmpty()) {
+            sendBatch();
+        }
+    }
+
+    /**
+     * Hand the current batch to the sender thread and start a new one, under the lock of the batcher
+     * All the batches are sent by this single thread in the order they are taken, the caller never waits for the RMI call
+     */
+    private void sendBatch() {
+        List<String> currentBatch = batch;
+        batch = new ArrayList<>();
+        sender.execute(() -> send(currentBatch));
+    }
+
+    /**
+     * Forward a batch to the DistributorManager in one RMI call
+     *
+     * @param replies : The batch to forward
+     */
+    private void send(List<String> replies) {
+        try {
+            manager.readMessagesFromRMI(replies);
+        } catch (RemoteException e) {
+            System.err.println("ReplyBatcher.send RemoteException: " + e.getMessage());
+        }
+    }
+}
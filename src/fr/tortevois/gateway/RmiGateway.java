@@ -3,13 +3,16 @@ package fr.tortevois.gateway;
 import fr.tortevois.distributor.Distributor;
 import fr.tortevois.distributor.DistributorGateway;
 import fr.tortevois.exception.NoNodeIDAvailable;
+import fr.tortevois.message.MessageType;
+import fr.tortevois.message.NodeSet;
+import fr.tortevois.message.QueryMessage;
 import fr.tortevois.server.IDistributorManager;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
+import fr.tortevois.transport.ITransport;
+import fr.tortevois.transport.UdpTransport;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.List;
+import java.util.Arrays;
 
 import static fr.tortevois.utils.Utils.OUT;
 import static fr.tortevois.utils.Utils.printTrace;
@@ -18,20 +21,33 @@ public class RmiGateway extends UnicastRemoteObject implements IGateway, IRmiGat
 
     private final static boolean DEBUG = true;
     private final IDistributorManager manager;
+    private final ReplyBatcher replyBatcher;
     private DistributorGateway distributorGateway = null;
 
     /**
-     * The RMI Gateway's constructor
+     * The RMI Gateway's constructor, over UDP
      *
      * @param manager : The DistributorManager
      * @throws RemoteException
      */
     public RmiGateway(IDistributorManager manager) throws RemoteException {
+        this(manager, new UdpTransport());
+    }
+
+    /**
+     * The RMI Gateway's constructor, over any transport (the in-process loopback or a multiplexed host for instance)
+     *
+     * @param manager   : The DistributorManager
+     * @param transport : The transport to the children nodes
+     * @throws RemoteException
+     */
+    public RmiGateway(IDistributorManager manager, ITransport transport) throws RemoteException {
         this.manager = manager;
+        this.replyBatcher = new ReplyBatcher(manager, REPLY_BATCH_MAX_SIZE, REPLY_BATCH_WINDOW);
 
         // Get the nodeID
         try {
-            distributorGateway = new DistributorGateway(this, manager.getAvailableNodeID());
+            distributorGateway = new DistributorGateway(this, transport, manager.getAvailableNodeID());
         } catch (NoNodeIDAvailable e) {
             System.err.println("No nodeID available");
             System.exit(-1);
@@ -53,20 +69,33 @@ public class RmiGateway extends UnicastRemoteObject implements IGateway, IRmiGat
     /**
      * Read a message sent from the RMI (DistributorManager)
      *
-     * @param query   : The message sent
-     * @param nodesID : The address list of node
+     * @param query         : The message sent
+     * @param queryID       : The query ID
+     * @param budget        : The time left to reply, in milliseconds: the deadline on the gateway's own clock
+     * @param nodes         : The queried nodes
+     * @param stockVersions : The stock version known of each queried node, aligned with the node set, or null for the full stocks
      * @throws RemoteException
      */
-    public void readMessageFromRMI(String query, List<Integer> nodesID) throws RemoteException {
-        printTrace(DEBUG, OUT, "RmiGateway.readMessageFromRMI: " + query + " | nodesID: " + nodesID);
+    public void readMessageFromRMI(String query, int queryID, long budget, NodeSet nodes, long[] stockVersions) throws RemoteException {
+        printTrace(DEBUG, OUT, "RmiGateway.readMessageFromRMI: " + query + " #" + queryID + " | nodes: " + nodes + " | stockVersions: " + Arrays.toString(stockVersions));
 
+        MessageType type = MessageType.fromName(query);
+        if (type == null) {
+            System.err.println("RmiGateway.readMessageFromRMI: unknown query " + query);
+            return;
+        }
         // Build message to Broadcast
-        JSONObject json = new JSONObject();
-        json.put("query", query);
-        JSONArray queryingNodesID = new JSONArray();
-        queryingNodesID.addAll(nodesID);
-        json.put("querying_nodes_id", queryingNodesID);
-        distributorGateway.broadcastMessage(json, query, nodesID);
+        distributorGateway.broadcastMessage(new QueryMessage(type, queryID, budget, nodes, stockVersions), null);
+    }
+
+    /**
+     * Get the transport statistics of the gateway: sockets, receive engine and dispatcher queue
+     *
+     * @return The formatted string
+     * @throws RemoteException
+     */
+    public String getStatistics() throws RemoteException {
+        return distributorGateway.getTransport().getStatistics();
     }
 
     // -- Gateway Interface implementation --------------------------------------------------------------------------------------
@@ -94,16 +123,12 @@ public class RmiGateway extends UnicastRemoteObject implements IGateway, IRmiGat
     }
 
     /**
-     * Send a message to the parent gateway
+     * Send a message to the parent gateway, coalesced with the other replies of the batching window
      *
      * @param msg : The message to send
      */
     public void sendMessageToGateway(String msg) {
-        try {
-            manager.readMessageFromRMI(msg);
-        } catch (RemoteException e) {
-            System.err.println("RmiGateway.sendMessageToGateway RemoteException: " + e.getMessage());
-        }
+        replyBatcher.add(msg);
     }
 
     // -- Internal Methods ------------------------------------------------------------------------------------------------------
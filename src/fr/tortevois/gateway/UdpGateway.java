@@ -2,9 +2,13 @@ package fr.tortevois.gateway;
 
 import fr.tortevois.distributor.Distributor;
 import fr.tortevois.distributor.DistributorGateway;
+import fr.tortevois.transport.ITransport;
+import fr.tortevois.transport.UdpTransport;
 import org.json.simple.JSONObject;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 
 import static fr.tortevois.zigbee.ZigBee.TYPE_GATEWAY;
 
@@ -20,8 +24,18 @@ public class UdpGateway implements IGateway {
      * @param gatewayPort    : The parent gateway port
      */
     public UdpGateway(InetAddress gatewayAddress, int gatewayPort) {
+        this(new UdpTransport(), new InetSocketAddress(gatewayAddress, gatewayPort));
+    }
+
+    /**
+     * The Gateway's constructor, over any transport (the in-process loopback or a multiplexed host for instance)
+     *
+     * @param transport      : The transport to the other nodes
+     * @param gatewayAddress : The parent gateway socket address, a NodeAddress for a gateway on a multiplexed host
+     */
+    public UdpGateway(ITransport transport, SocketAddress gatewayAddress) {
         // Create the Gateway
-        distributorGateway = new DistributorGateway(this, gatewayAddress, gatewayPort, TYPE_GATEWAY);
+        distributorGateway = new DistributorGateway(this, transport, gatewayAddress, TYPE_GATEWAY);
 
         // Set Network Parameters
         setNetworkParameters();
@@ -51,8 +65,8 @@ public class UdpGateway implements IGateway {
         JSONObject json = new JSONObject();
         json.put("query", QUERY_NETWORK_PARAMETERS);
         json.put("node_id", distributorGateway.getNodeID());
-        // Send the query
-        sendMessageToGateway(json.toString());
+        // Send the query, in the encoding negotiated with the parent gateway
+        distributorGateway.sendMessageToGateway(json);
 
         // Wait the reply
         System.out.println("Waiting network parameters");
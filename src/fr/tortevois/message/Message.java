@@ -0,0 +1,137 @@
+package fr.tortevois.message;
+
+import fr.tortevois.codec.BinaryCodec;
+import fr.tortevois.codec.BinaryReader;
+import fr.tortevois.codec.BinaryWriter;
+import fr.tortevois.codec.JsonReader;
+import fr.tortevois.codec.JsonWriter;
+import fr.tortevois.codec.MessageReader;
+import fr.tortevois.codec.MessageWriter;
+
+import java.nio.BufferUnderflowException;
+import java.util.function.Supplier;
+
+public abstract class Message {
+
+    private final MessageType type;
+
+    /**
+     * The message's constructor
+     *
+     * @param type : The message type
+     */
+    protected Message(MessageType type) {
+        this.type = type;
+    }
+
+    /**
+     * Get the message type
+     *
+     * @return The message type
+     */
+    public MessageType getType() {
+        return type;
+    }
+
+    /**
+     * Read a typed message from a JSON frame
+     *
+     * @param msg  : The JSON frame
+     * @param type : The message type, peeked from the frame
+     * @return The typed message, or null if the frame is malformed or its message type is not typed
+     */
+    public static Message fromJson(String msg, MessageType type) {
+        return read(type, () -> new JsonReader(msg));
+    }
+
+    /**
+     * Read a typed message from a binary frame
+     *
+     * @param frame : The binary frame
+     * @return The typed message, or null if the frame is malformed or its message type is not typed
+     */
+    public static Message fromBinary(byte[] frame) {
+        MessageType type = BinaryCodec.getMessageType(frame);
+        if (type == null) {
+            return null;
+        }
+        return read(type, () -> new BinaryReader(frame));
+    }
+
+    /**
+     * Read the fields of a typed message
+     *
+     * @param type   : The message type
+     * @param reader : The reader builder, called only for a typed message
+     * @return The typed message, or null if the frame is malformed or its message type is not typed
+     */
+    private static Message read(MessageType type, Supplier<MessageReader> reader) {
+        Message message = type.newMessage();
+        if (message == null) {
+            return null;
+        }
+        try {
+            MessageReader fields = reader.get();
+            String key;
+            while ((key = fields.nextKey()) != null) {
+                if (key.equals("query")) {
+                    fields.skipValue(); // Already read, it is the message type
+                } else {
+                    message.readField(key, fields);
+                }
+            }
+            return message;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Encode the message into a binary frame
+     *
+     * @return The binary frame
+     */
+    public byte[] toBinary() {
+        BinaryWriter writer = new BinaryWriter(type);
+        writeFields(writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encode the message into a JSON frame
+     *
+     * @return The JSON frame
+     */
+    public String toJson() {
+        JsonWriter writer = new JsonWriter(type);
+        writeFields(writer);
+        return writer.toString();
+    }
+
+    /**
+     * Get the JSON frame of the message, for the traces
+     *
+     * @return The JSON frame
+     */
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    /**
+     * Write the fields of the message, but the message type
+     *
+     * @param writer : The writer
+     */
+    protected abstract void writeFields(MessageWriter writer);
+
+    /**
+     * Read a field of the message into its typed field, an unknown field is skipped
+     *
+     * @param key    : The key of the field
+     * @param reader : The reader, on the value of the field
+     */
+    protected void readField(String key, MessageReader reader) {
+        reader.skipValue();
+    }
+}
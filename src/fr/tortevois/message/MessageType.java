@@ -0,0 +1,120 @@
+package fr.tortevois.message;
+
+import fr.tortevois.gateway.IGateway;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public enum MessageType {
+
+    // The code is the one-byte message type of the binary frames: never change nor reuse a code
+    QUERY_GET_NODE_ID(IGateway.QUERY_GET_NODE_ID, 1),
+    QUERY_NETWORK_PARAMETERS(IGateway.QUERY_NETWORK_PARAMETERS, 2),
+    QUERY_GET_STOCK(IGateway.QUERY_GET_STOCK, 3),
+    QUERY_GET_MONEY(IGateway.QUERY_GET_MONEY, 4),
+    REPLY_GET_NODE_ID(IGateway.REPLY_GET_NODE_ID, 5),
+    REPLY_NEW_NODE_CONNEXION(IGateway.REPLY_NEW_NODE_CONNEXION, 6),
+    REPLY_NETWORK_PARAMETERS(IGateway.REPLY_NETWORK_PARAMETERS, 7),
+    REPLY_GET_STOCK(IGateway.REPLY_GET_STOCK, 8),
+    REPLY_GET_MONEY(IGateway.REPLY_GET_MONEY, 9),
+    PUSH_TELEMETRY(IGateway.PUSH_TELEMETRY, 10),
+    ADD_TO_LOGS_HISTORY(IGateway.ADD_TO_LOGS_HISTORY, 11);
+
+    private final static Map<String, MessageType> byName = new HashMap<>();
+    private final static MessageType[] byCode = new MessageType[256];
+
+    static {
+        for (MessageType type : values()) {
+            byName.put(type.name, type);
+            byCode[type.code] = type;
+        }
+    }
+
+    private final String name;
+    private final int code;
+
+    /**
+     * The message type's constructor
+     *
+     * @param name : The query name, in the "query" field of the JSON frames
+     * @param code : The one-byte code, in the binary frames
+     */
+    MessageType(String name, int code) {
+        this.name = name;
+        this.code = code;
+    }
+
+    /**
+     * Get the query name
+     *
+     * @return The query name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the one-byte code
+     *
+     * @return The code
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Get a message type by its query name
+     *
+     * @param name : The query name, or null
+     * @return The message type, or null if unknown
+     */
+    public static MessageType fromName(String name) {
+        return (name == null) ? null : byName.get(name);
+    }
+
+    /**
+     * Get a message type by its one-byte code
+     *
+     * @param code : The code
+     * @return The message type, or null if unknown
+     */
+    public static MessageType fromCode(int code) {
+        return (code >= 0 && code < byCode.length) ? byCode[code] : null;
+    }
+
+    /**
+     * Build an empty typed message of this type, to be read from a frame
+     *
+     * @return The typed message, or null if the message type is only carried as a JSON object
+     */
+    Message newMessage() {
+        switch (this) {
+            case QUERY_GET_STOCK:
+            case QUERY_GET_MONEY:
+                return new QueryMessage(this);
+            case REPLY_GET_STOCK:
+                return new StockReply();
+            case REPLY_GET_MONEY:
+                return new MoneyReply();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Check if the messages of this type are read as typed messages
+     *
+     * @return The boolean status
+     */
+    public boolean isTyped() {
+        switch (this) {
+            case QUERY_GET_STOCK:
+            case QUERY_GET_MONEY:
+            case REPLY_GET_STOCK:
+            case REPLY_GET_MONEY:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
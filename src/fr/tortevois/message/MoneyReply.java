@@ -0,0 +1,66 @@
+package fr.tortevois.message;
+
+import fr.tortevois.codec.MessageReader;
+import fr.tortevois.codec.MessageWriter;
+
+import static fr.tortevois.gateway.IGateway.REPLY_STATUS_CONNECTED;
+
+public class MoneyReply extends Reply {
+
+    private double money;
+
+    /**
+     * The money reply's constructor, to be read from a frame
+     */
+    MoneyReply() {
+        super(MessageType.REPLY_GET_MONEY);
+    }
+
+    /**
+     * The money reply's constructor
+     *
+     * @param queryID  : The query ID
+     * @param nodeID   : The node ID of the distributor
+     * @param money    : The money of the distributor
+     * @param sequence : The telemetry sequence of the distributor
+     */
+    public MoneyReply(int queryID, int nodeID, double money, long sequence) {
+        super(MessageType.REPLY_GET_MONEY, queryID, REPLY_STATUS_CONNECTED, nodeID, sequence);
+        this.money = money;
+    }
+
+    /**
+     * Get the money of the distributor
+     *
+     * @return The money amount
+     */
+    public double getMoney() {
+        return money;
+    }
+
+    /**
+     * Write the fields of the reply
+     *
+     * @param writer : The writer
+     */
+    @Override
+    protected void writeFields(MessageWriter writer) {
+        super.writeFields(writer);
+        writer.writeDouble("distributor_money", money);
+    }
+
+    /**
+     * Read a field of the reply
+     *
+     * @param key    : The key of the field
+     * @param reader : The reader, on the value of the field
+     */
+    @Override
+    protected void readField(String key, MessageReader reader) {
+        if (key.equals("distributor_money")) {
+            money = reader.readDouble();
+        } else {
+            super.readField(key, reader);
+        }
+    }
+}
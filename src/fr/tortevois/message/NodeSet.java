@@ -0,0 +1,310 @@
+package fr.tortevois.message;
+
+import fr.tortevois.codec.MessageWriter;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+public final class NodeSet implements Serializable {
+
+    private final static long serialVersionUID = 1L;
+    // The bitmap of a node set on the wire: its base node ID, then words of BITMAP_WORD_SIZE bits
+    // (small words stay small varints, and JSON numbers)
+    private final static int BITMAP_WORD_SIZE = 16;
+
+    // The sorted and disjoint ranges of the node IDs: [starts[i], ends[i])
+    private final int[] starts;
+    private final int[] ends;
+    private final int size;
+
+    /**
+     * The node set's constructor
+     *
+     * @param starts : The first node ID of the ranges, sorted
+     * @param ends   : The node ID after the last one of the ranges
+     * @param count  : The ranges count in the arrays
+     */
+    private NodeSet(int[] starts, int[] ends, int count) {
+        this.starts = Arrays.copyOf(starts, count);
+        this.ends = Arrays.copyOf(ends, count);
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            size += ends[i] - starts[i];
+        }
+        this.size = size;
+    }
+
+    /**
+     * Build a node set from an address list
+     *
+     * @param nodesID : The address list, in any order, with duplicates or not
+     * @return The node set
+     */
+    public static NodeSet of(Collection<Integer> nodesID) {
+        int[] sorted = new int[nodesID.size()];
+        int i = 0;
+        for (int nodeID : nodesID) {
+            sorted[i++] = nodeID;
+        }
+        return of(sorted);
+    }
+
+    /**
+     * Build a node set from an address array
+     *
+     * @param nodesID : The address array, in any order, with duplicates or not (sorted in place)
+     * @return The node set
+     */
+    public static NodeSet of(int[] nodesID) {
+        Arrays.sort(nodesID);
+        int[] starts = new int[nodesID.length];
+        int[] ends = new int[nodesID.length];
+        int count = 0;
+        for (int nodeID : nodesID) {
+            if (count > 0 && nodeID <= ends[count - 1]) {
+                ends[count - 1] = Math.max(ends[count - 1], nodeID + 1); // Next node ID of the range, or a duplicate
+            } else {
+                starts[count] = nodeID;
+                ends[count] = nodeID + 1;
+                count++;
+            }
+        }
+        return new NodeSet(starts, ends, count);
+    }
+
+    /**
+     * Build a node set from its ranges on the wire: the first node ID and the length of the first range,
+     * then for each next range the gap since the end of the previous one and its length
+     *
+     * @param ranges : The delta encoded ranges
+     * @return The node set
+     */
+    static NodeSet fromRanges(int[] ranges) {
+        if (ranges.length % 2 != 0) {
+            throw new IllegalArgumentException("Odd ranges array");
+        }
+        int count = ranges.length / 2;
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        long end = 0;
+        for (int i = 0; i < count; i++) {
+            long start = (i == 0) ? ranges[0] : end + ranges[2 * i];
+            end = start + ranges[2 * i + 1];
+            if ((i > 0 && ranges[2 * i] < 1) || ranges[2 * i + 1] < 1 || end > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Malformed ranges");
+            }
+            starts[i] = (int) start;
+            ends[i] = (int) end;
+        }
+        return new NodeSet(starts, ends, count);
+    }
+
+    /**
+     * Build a node set from its bitmap on the wire: the base node ID, then the words of BITMAP_WORD_SIZE bits
+     *
+     * @param bitmap : The base node ID and the words
+     * @return The node set
+     */
+    static NodeSet fromBitmap(int[] bitmap) {
+        if (bitmap.length == 0) {
+            throw new IllegalArgumentException("Bitmap without base");
+        }
+        int base = bitmap[0];
+        int bitsCount = (bitmap.length - 1) * BITMAP_WORD_SIZE;
+        // Count the ranges first: the arrays are sized by the ranges, not by the bits
+        int count = 0;
+        for (int bit = 0; bit < bitsCount; bit++) {
+            if (isSet(bitmap, bit) && (bit == 0 || !isSet(bitmap, bit - 1))) {
+                count++;
+            }
+        }
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        int range = -1;
+        for (int bit = 0; bit < bitsCount; bit++) {
+            if (isSet(bitmap, bit)) {
+                if (bit == 0 || !isSet(bitmap, bit - 1)) {
+                    starts[++range] = base + bit;
+                }
+                ends[range] = base + bit + 1;
+            }
+        }
+        return new NodeSet(starts, ends, count);
+    }
+
+    /**
+     * Check a bit of a bitmap on the wire
+     *
+     * @param bitmap : The base node ID and the words
+     * @param bit    : The bit index, from the base node ID
+     * @return The boolean status
+     */
+    private static boolean isSet(int[] bitmap, int bit) {
+        return (bitmap[1 + bit / BITMAP_WORD_SIZE] & (1 << (bit % BITMAP_WORD_SIZE))) != 0;
+    }
+
+    /**
+     * Get the nodes count
+     *
+     * @return The nodes count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check if a node is in the set, in O(log ranges)
+     *
+     * @param nodeID : The node ID
+     * @return The boolean status
+     */
+    public boolean contains(int nodeID) {
+        return intersects(nodeID, nodeID + 1);
+    }
+
+    /**
+     * Get the rank of a node in the sorted node IDs: the index of its value in the arrays aligned with the set
+     *
+     * @param nodeID : The node ID
+     * @return The rank, or -1 if the node is not in the set
+     */
+    public int indexOf(int nodeID) {
+        int index = 0;
+        for (int range = 0; range < starts.length && starts[range] <= nodeID; range++) {
+            if (nodeID < ends[range]) {
+                return index + nodeID - starts[range];
+            }
+            index += ends[range] - starts[range];
+        }
+        return -1;
+    }
+
+    /**
+     * Check if a node of an interval is in the set, in O(log ranges): the subtree of a gateway is an interval of node IDs
+     *
+     * @param low  : The first node ID of the interval
+     * @param high : The node ID after the last one of the interval
+     * @return The boolean status
+     */
+    public boolean intersects(int low, int high) {
+        // The first range ending after low
+        int min = 0;
+        int max = ends.length;
+        while (min < max) {
+            int middle = (min + max) >>> 1;
+            if (ends[middle] <= low) {
+                min = middle + 1;
+            } else {
+                max = middle;
+            }
+        }
+        return min < ends.length && starts[min] < high && low < high;
+    }
+
+    /**
+     * Get the node IDs
+     *
+     * @return The sorted node IDs
+     */
+    public int[] toArray() {
+        int[] nodesID = new int[size];
+        int i = 0;
+        for (int range = 0; range < starts.length; range++) {
+            for (int nodeID = starts[range]; nodeID < ends[range]; nodeID++) {
+                nodesID[i++] = nodeID;
+            }
+        }
+        return nodesID;
+    }
+
+    /**
+     * Write the node set in its smallest form: its ranges, or its bitmap for the scattered nodes
+     *
+     * @param writer    : The writer
+     * @param rangesKey : The key of the ranges field
+     * @param bitmapKey : The key of the bitmap field
+     */
+    void write(MessageWriter writer, String rangesKey, String bitmapKey) {
+        int[] ranges = getRanges();
+        int rangesSize = getVarintsSize(ranges);
+        int[] bitmap = null;
+        if (starts.length > 1) {
+            // Each word takes one byte at least: the bitmap of nodes far apart is not even built
+            long wordsCount = ((long) ends[ends.length - 1] - starts[0] + BITMAP_WORD_SIZE - 1) / BITMAP_WORD_SIZE;
+            bitmap = (wordsCount < rangesSize) ? getBitmap() : null;
+        }
+        if (bitmap != null && getVarintsSize(bitmap) < rangesSize) {
+            writer.writeIntArray(bitmapKey, bitmap);
+        } else {
+            writer.writeIntArray(rangesKey, ranges);
+        }
+    }
+
+    /**
+     * Get the delta encoded ranges
+     *
+     * @return The ranges, for the wire
+     */
+    private int[] getRanges() {
+        int[] ranges = new int[starts.length * 2];
+        for (int i = 0; i < starts.length; i++) {
+            ranges[2 * i] = (i == 0) ? starts[0] : starts[i] - ends[i - 1];
+            ranges[2 * i + 1] = ends[i] - starts[i];
+        }
+        return ranges;
+    }
+
+    /**
+     * Get the bitmap
+     *
+     * @return The base node ID and the words, for the wire
+     */
+    private int[] getBitmap() {
+        int base = starts[0];
+        long bitsCount = (long) ends[ends.length - 1] - base;
+        int[] bitmap = new int[1 + (int) ((bitsCount + BITMAP_WORD_SIZE - 1) / BITMAP_WORD_SIZE)];
+        bitmap[0] = base;
+        for (int range = 0; range < starts.length; range++) {
+            for (int bit = starts[range] - base; bit < ends[range] - base; bit++) {
+                bitmap[1 + bit / BITMAP_WORD_SIZE] |= 1 << (bit % BITMAP_WORD_SIZE);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Get the size of values in zigzag varints, as written by the binary writer
+     *
+     * @param values : The values
+     * @return The size in bytes
+     */
+    private static int getVarintsSize(int[] values) {
+        int size = 0;
+        for (int value : values) {
+            long zigzag = ((long) value << 1) ^ (value >> 31);
+            size += 1 + (63 - Long.numberOfLeadingZeros(zigzag | 1)) / 7;
+        }
+        return size;
+    }
+
+    /**
+     * Get the formatted node set, for the traces
+     *
+     * @return The ranges, as [start-end] with end included
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("[");
+        for (int i = 0; i < starts.length; i++) {
+            if (i > 0) {
+                str.append(',');
+            }
+            str.append(starts[i]);
+            if (ends[i] - starts[i] > 1) {
+                str.append('-').append(ends[i] - 1);
+            }
+        }
+        return str.append(']').toString();
+    }
+}
@@ -0,0 +1,199 @@
+package fr.tortevois.message;
+
+import fr.tortevois.codec.MessageReader;
+import fr.tortevois.codec.MessageWriter;
+
+import static fr.tortevois.message.StockReply.NO_STOCK_VERSION;
+import static fr.tortevois.server.IDistributorManager.NO_QUERY_ID;
+
+public class QueryMessage extends Message {
+
+    public final static long NO_BUDGET = 0;
+    private final static long NO_DEADLINE = 0;
+
+    private int queryID = NO_QUERY_ID;
+    private long deadline = NO_DEADLINE; // On the clock of this node: the frames carry the remaining budget, never a clock time
+    private NodeSet nodes = NodeSet.of(new int[0]);
+    private long stockVersion = NO_STOCK_VERSION; // The oldest stock version known by the querier, for a QUERY_GET_STOCK
+    // The version known of each node after the oldest one, aligned with the node set: each version is on the clock of its node
+    private int[] stockVersionOffsets = null;
+
+    /**
+     * The query message's constructor, to be read from a frame
+     *
+     * @param type : QUERY_GET_MONEY or QUERY_GET_STOCK
+     */
+    QueryMessage(MessageType type) {
+        super(type);
+    }
+
+    /**
+     * The query message's constructor
+     *
+     * @param type     : QUERY_GET_MONEY or QUERY_GET_STOCK
+     * @param queryID  : The query ID
+     * @param budget   : The time left to reply, in milliseconds, or NO_BUDGET
+     * @param nodes    : The queried nodes
+     */
+    public QueryMessage(MessageType type, int queryID, long budget, NodeSet nodes) {
+        this(type, queryID, budget, nodes, null);
+    }
+
+    /**
+     * The query message's constructor, with the stock versions known by the querier
+     *
+     * @param type          : QUERY_GET_MONEY or QUERY_GET_STOCK
+     * @param queryID       : The query ID
+     * @param budget        : The time left to reply, in milliseconds, or NO_BUDGET
+     * @param nodes         : The queried nodes
+     * @param stockVersions : The stock version known of each queried node, aligned with the node set, or null for the full stocks
+     */
+    public QueryMessage(MessageType type, int queryID, long budget, NodeSet nodes, long[] stockVersions) {
+        super(type);
+        this.queryID = queryID;
+        setBudget(budget);
+        this.nodes = nodes;
+        if (stockVersions != null && stockVersions.length == nodes.size() && stockVersions.length > 0) {
+            // Sent as offsets from the oldest version: small varints, the versions of the nodes being close to each other
+            stockVersion = Long.MAX_VALUE;
+            for (long version : stockVersions) {
+                stockVersion = Math.min(stockVersion, version);
+            }
+            stockVersionOffsets = new int[stockVersions.length];
+            for (int i = 0; i < stockVersions.length; i++) {
+                stockVersionOffsets[i] = (int) Math.min(Integer.MAX_VALUE, stockVersions[i] - stockVersion);
+            }
+        }
+    }
+
+    /**
+     * Get the query ID
+     *
+     * @return The query ID
+     */
+    public int getQueryID() {
+        return queryID;
+    }
+
+    /**
+     * Get the queried nodes
+     *
+     * @return The node set
+     */
+    public NodeSet getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Get the stock version of a node known by the querier: only the products changed since then are expected
+     *
+     * @param nodeID : The queried node ID
+     * @return The stock version, or NO_STOCK_VERSION for the full stock
+     */
+    public long getStockVersion(int nodeID) {
+        if (stockVersion == NO_STOCK_VERSION || stockVersionOffsets == null) {
+            return stockVersion; // The same version for all the nodes, from a former node
+        }
+        int index = nodes.indexOf(nodeID);
+        if (index < 0 || index >= stockVersionOffsets.length) {
+            return NO_STOCK_VERSION;
+        }
+        return stockVersion + stockVersionOffsets[index];
+    }
+
+    /**
+     * Check if a node is queried
+     *
+     * @param nodeID : The node ID
+     * @return The boolean status
+     */
+    public boolean isQueried(int nodeID) {
+        return nodes.contains(nodeID);
+    }
+
+    /**
+     * Check if the query has a deadline
+     *
+     * @return The boolean status
+     */
+    public boolean hasDeadline() {
+        return deadline != NO_DEADLINE;
+    }
+
+    /**
+     * Check if the query deadline is passed: nobody waits anymore for the reply
+     *
+     * @return The boolean status
+     */
+    public boolean isExpired() {
+        return deadline != NO_DEADLINE && System.currentTimeMillis() > deadline;
+    }
+
+    /**
+     * Set the local deadline from the time left to reply
+     *
+     * @param budget : The time left to reply, in milliseconds, or NO_BUDGET
+     */
+    private void setBudget(long budget) {
+        deadline = (budget != NO_BUDGET) ? System.currentTimeMillis() + budget : NO_DEADLINE;
+    }
+
+    /**
+     * Write the fields of the query
+     *
+     * @param writer : The writer
+     */
+    protected void writeFields(MessageWriter writer) {
+        writer.writeLong("query_id", queryID);
+        if (deadline != NO_DEADLINE) {
+            // The time left when the frame is sent, an expired query is still written with the smallest budget
+            writer.writeLong("budget", Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        nodes.write(writer, "querying_nodes_ranges", "querying_nodes_bitmap");
+        if (stockVersion != NO_STOCK_VERSION) {
+            writer.writeLong("stock_version", stockVersion);
+            if (stockVersionOffsets != null) {
+                writer.writeIntArray("stock_version_offsets", stockVersionOffsets);
+            }
+        }
+    }
+
+    /**
+     * Read a field of the query
+     *
+     * @param key    : The key of the field
+     * @param reader : The reader, on the value of the field
+     */
+    @Override
+    protected void readField(String key, MessageReader reader) {
+        switch (key) {
+            case "query_id":
+                queryID = (int) reader.readLong();
+                break;
+            case "budget":
+                setBudget(reader.readLong());
+                break;
+            case "deadline": // The absolute deadline of a former node, on its own clock
+                deadline = reader.readLong();
+                break;
+            case "querying_nodes_id": // The address list of a former node
+                nodes = NodeSet.of(reader.readIntArray());
+                break;
+            case "querying_nodes_ranges":
+                nodes = NodeSet.fromRanges(reader.readIntArray());
+                break;
+            case "querying_nodes_bitmap":
+                nodes = NodeSet.fromBitmap(reader.readIntArray());
+                break;
+            case "stock_version":
+                stockVersion = reader.readLong();
+                break;
+            case "stock_version_offsets":
+                stockVersionOffsets = reader.readIntArray();
+                break;
+            default:
+                super.readField(key, reader);
+                break;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package fr.tortevois.message;
+
+import fr.tortevois.codec.MessageReader;
+import fr.tortevois.codec.MessageWriter;
+import fr.tortevois.server.FleetSnapshot;
+
+import static fr.tortevois.gateway.IGateway.REPLY_STATUS_NOT_CONNECTED;
+import static fr.tortevois.server.IDistributorManager.NO_QUERY_ID;
+
+public abstract class Reply extends Message {
+
+    public final static long NO_SEQUENCE = FleetSnapshot.NO_SEQUENCE;
+
+    private int queryID = NO_QUERY_ID;
+    private int status;
+    private int nodeID = -1;
+    private long sequence = NO_SEQUENCE;
+
+    /**
+     * The reply's constructor, to be read from a frame
+     *
+     * @param type : The message type
+     */
+    Reply(MessageType type) {
+        super(type);
+    }
+
+    /**
+     * The reply's constructor
+     *
+     * @param type     : The message type
+     * @param queryID  : The query ID
+     * @param status   : The reply status
+     * @param nodeID   : The node ID of the replying distributor (or of the not connected one)
+     * @param sequence : The telemetry sequence of the distributor, or NO_SEQUENCE
+     */
+    Reply(MessageType type, int queryID, int status, int nodeID, long sequence) {
+        super(type);
+        this.queryID = queryID;
+        this.status = status;
+        this.nodeID = nodeID;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Get the query ID
+     *
+     * @return The query ID
+     */
+    public int getQueryID() {
+        return queryID;
+    }
+
+    /**
+     * Get the reply status
+     *
+     * @return The reply status
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the node ID which sent the reply
+     *
+     * @return The node ID, or -1 if the reply doesn't carry it
+     */
+    public int getNodeID() {
+        return nodeID;
+    }
+
+    /**
+     * Get the telemetry sequence of the distributor when it replied
+     *
+     * @return The sequence, or NO_SEQUENCE
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Write the fields common to the replies
+     *
+     * @param writer : The writer
+     */
+    protected void writeFields(MessageWriter writer) {
+        writer.writeLong("query_id", queryID);
+        writer.writeLong("status", status);
+        // The reply for a not connected node is sent by its gateway, on behalf of the node
+        writer.writeLong((status == REPLY_STATUS_NOT_CONNECTED) ? "node_id" : "distributor_id", nodeID);
+        if (sequence != NO_SEQUENCE) {
+            writer.writeLong("sequence", sequence);
+        }
+    }
+
+    /**
+     * Read a field common to the replies
+     *
+     * @param key    : The key of the field
+     * @param reader : The reader, on the value of the field
+     */
+    @Override
+    protected void readField(String key, MessageReader reader) {
+        switch (key) {
+            case "query_id":
+                queryID = (int) reader.readLong();
+                break;
+            case "status":
+                status = (int) reader.readLong();
+                break;
+            case "distributor_id":
+            case "node_id":
+                nodeID = (int) reader.readLong();
+                break;
+            case "sequence":
+                sequence = reader.readLong();
+                break;
+            default:
+                super.readField(key, reader);
+                break;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package fr.tortevois.message;
+
+import fr.tortevois.codec.MessageReader;
+import fr.tortevois.codec.MessageWriter;
+
+import static fr.tortevois.gateway.IGateway.REPLY_STATUS_CONNECTED;
+import static fr.tortevois.gateway.IGateway.REPLY_STATUS_NOT_MODIFIED;
+
+public class StockReply extends Reply {
+
+    public final static long NO_STOCK_VERSION = 0;
+
+    private int[] ids = null; // null for a reply without stock (bad request, not connected node, not modified stock)
+    private int[] quantities = null;
+    private long stockVersion = NO_STOCK_VERSION;
+    private long baseVersion = NO_STOCK_VERSION; // The version the changed products are relative to, NO_STOCK_VERSION for a full stock
+
+    /**
+     * The stock reply's constructor, to be read from a frame
+     */
+    StockReply() {
+        super(MessageType.REPLY_GET_STOCK);
+    }
+
+    /**
+     * The stock reply's constructor
+     *
+     * @param queryID      : The query ID
+     * @param nodeID       : The node ID of the distributor
+     * @param ids          : The products ID, all of them or only the changed ones since the base version
+     * @param quantities   : The products quantity, in the same order
+     * @param sequence     : The telemetry sequence of the distributor
+     * @param stockVersion : The stock version of the distributor
+     * @param baseVersion  : The stock version known by the querier for the changed products only, or NO_STOCK_VERSION for a full stock
+     */
+    public StockReply(int queryID, int nodeID, int[] ids, int[] quantities, long sequence, long stockVersion, long baseVersion) {
+        super(MessageType.REPLY_GET_STOCK, queryID, REPLY_STATUS_CONNECTED, nodeID, sequence);
+        this.ids = ids;
+        this.quantities = quantities;
+        this.stockVersion = stockVersion;
+        this.baseVersion = baseVersion;
+    }
+
+    /**
+     * The constructor of a not modified stock reply: the querier already knows the stock version
+     *
+     * @param queryID      : The query ID
+     * @param nodeID       : The node ID of the distributor
+     * @param sequence     : The telemetry sequence of the distributor
+     * @param stockVersion : The stock version of the distributor
+     */
+    public StockReply(int queryID, int nodeID, long sequence, long stockVersion) {
+        super(MessageType.REPLY_GET_STOCK, queryID, REPLY_STATUS_NOT_MODIFIED, nodeID, sequence);
+        this.stockVersion = stockVersion;
+    }
+
+    /**
+     * The constructor of a stock reply without stock: the status tells why (also used as the reply to a bad request)
+     *
+     * @param queryID : The query ID
+     * @param status  : The reply status
+     * @param nodeID  : The node ID of the distributor
+     */
+    public StockReply(int queryID, int status, int nodeID) {
+        super(MessageType.REPLY_GET_STOCK, queryID, status, nodeID, NO_SEQUENCE);
+    }
+
+    /**
+     * Get the products ID
+     *
+     * @return The products ID, or null without stock
+     */
+    public int[] getIds() {
+        return ids;
+    }
+
+    /**
+     * Get the products quantity
+     *
+     * @return The products quantity, in the order of the products ID, or null without stock
+     */
+    public int[] getQuantities() {
+        return quantities;
+    }
+
+    /**
+     * Get the stock version of the distributor
+     *
+     * @return The stock version, or NO_STOCK_VERSION if the reply doesn't carry it
+     */
+    public long getStockVersion() {
+        return stockVersion;
+    }
+
+    /**
+     * Get the stock version the changed products are relative to
+     *
+     * @return The base version, or NO_STOCK_VERSION for a full stock
+     */
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * Check if the stock holds only the changed products since the base version
+     *
+     * @return The boolean status
+     */
+    public boolean isDelta() {
+        return baseVersion != NO_STOCK_VERSION;
+    }
+
+    /**
+     * Write the fields of the reply
+     *
+     * @param writer : The writer
+     */
+    @Override
+    protected void writeFields(MessageWriter writer) {
+        super.writeFields(writer);
+        if (stockVersion != NO_STOCK_VERSION) {
+            writer.writeLong("stock_version", stockVersion);
+        }
+        if (baseVersion != NO_STOCK_VERSION) {
+            writer.writeLong("stock_base", baseVersion);
+        }
+        if (ids != null && quantities != null) {
+            writer.beginObject("distributor_stock");
+            writer.writeIntArray("id", ids);
+            writer.writeIntArray("quantity", quantities);
+            writer.endObject();
+        }
+    }
+
+    /**
+     * Read a field of the reply
+     *
+     * @param key    : The key of the field
+     * @param reader : The reader, on the value of the field
+     */
+    @Override
+    protected void readField(String key, MessageReader reader) {
+        switch (key) {
+            case "stock_version":
+                stockVersion = reader.readLong();
+                break;
+            case "stock_base":
+                baseVersion = reader.readLong();
+                break;
+            case "distributor_stock":
+                readStock(reader);
+                break;
+            default:
+                super.readField(key, reader);
+                break;
+        }
+    }
+
+    /**
+     * Read the stock object
+     *
+     * @param reader : The reader, on the stock object
+     */
+    private void readStock(MessageReader reader) {
+        reader.beginObject();
+        String stockKey;
+        while ((stockKey = reader.nextKey()) != null) {
+            switch (stockKey) {
+                case "id":
+                    ids = reader.readIntArray();
+                    break;
+                case "quantity":
+                    quantities = reader.readIntArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+    }
+}
@@ -1,24 +1,40 @@
 package fr.tortevois.server;
 
 import fr.tortevois.admin.IAdminInterface;
+import fr.tortevois.codec.JsonPeek;
 import fr.tortevois.exception.NoNodeIDAvailable;
+import fr.tortevois.exception.QueryQueueFull;
 import fr.tortevois.gateway.IRmiGateway;
+import fr.tortevois.message.Message;
+import fr.tortevois.message.MessageType;
+import fr.tortevois.message.NodeSet;
+import fr.tortevois.message.Reply;
 import fr.tortevois.utils.CSV;
 import fr.tortevois.zigbee.ZigBee;
 import fr.tortevois.zigbee.ZigBeeException;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import java.net.MalformedURLException;
 import java.rmi.Naming;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static fr.tortevois.admin.IAdminInterface.ADMIN_INTERFACE_RMI_NAME;
@@ -42,10 +58,16 @@ public class DistributorManager extends UnicastRemoteObject implements IDistribu
     private int[] childrenNodesInformation;
     private Map<Integer, Boolean> connectedGateways; // Children in the direct upper ring
     private Map<Integer, Boolean> connectedDistributors; // All the distributors connected
-    String expectedReply;
-    AtomicBoolean isQueryInProgress;
-    AtomicInteger expectedRepliesCount;
-    List<String> buffer;
+    private Map<Integer, Query> queries; // The in progress and recently ended queries, by query ID
+    private AtomicInteger lastQueryID;
+    private QueryQueue queryQueue;
+    private ScheduledExecutorService queryTimer;
+    private ExecutorService listenersExecutor; // The remote listeners calls, off the query timer and the RMI threads
+    private GatewayDirectory gatewaysDirectory;
+    private ExecutorService fanOutExecutor;
+    private Map<Integer, AtomicInteger> gatewaysCalls; // The fan-out calls in progress, by gateway
+    private LatencyEstimator latencyEstimator;
+    private FleetSnapshot snapshot;
 
     private Map<Integer, String> productsDatabase;
 
@@ -91,17 +113,23 @@ public class DistributorManager extends UnicastRemoteObject implements IDistribu
             connectedGateways = new TreeMap<>();
             connectedDistributors = new TreeMap<>();
 
-            // Initialize query
-            expectedReply = "";
-            isQueryInProgress = new AtomicBoolean(false);
-            expectedRepliesCount = new AtomicInteger(0);
-            buffer = new ArrayList<>();
+            // Initialize the queries registry
+            queries = new ConcurrentHashMap<>();
+            lastQueryID = new AtomicInteger(0);
+            queryQueue = new QueryQueue(MAX_QUERIES_IN_PROGRESS, QUERY_QUEUE_MAX_SIZE, QUERY_ADMISSION_TIMEOUT);
+            queryTimer = Executors.newSingleThreadScheduledExecutor();
+            listenersExecutor = Executors.newCachedThreadPool();
+            gatewaysDirectory = new GatewayDirectory();
+            fanOutExecutor = Executors.newFixedThreadPool(FAN_OUT_POOL_SIZE);
+            gatewaysCalls = new ConcurrentHashMap<>();
 
             loadProductsDatabase();
 
             logsHistory = new ArrayList<>();
 
             setAvailableNodesID();
+            snapshot = new FleetSnapshot(addressCount, SNAPSHOT_TTL, SNAPSHOT_LIVE_TTL, productsDatabase);
+            latencyEstimator = new LatencyEstimator(childrenNodesInformation[INTERVAL_LOW_LIMIT], childrenNodesInformation[INTERVAL_STEP], QUERY_MIN_TIMEOUT, QUERY_TIMEOUT);
 
             isInit = true;
         } else {
@@ -155,6 +183,7 @@ public class DistributorManager extends UnicastRemoteObject implements IDistribu
             if (entry.getValue() == NODE_NOT_CONNECTED) {
                 connectedGateways.put(entry.getKey(), NODE_CONNECTED);
                 connectedDistributors.put(entry.getKey(), NODE_CONNECTED);
+                snapshot.invalidate(entry.getKey());
                 printTrace(DEBUG, OUT, "Give nodeID " + entry.getKey());
                 return entry.getKey();
             }
@@ -162,6 +191,21 @@ public class DistributorManager extends UnicastRemoteObject implements IDistribu
         throw new NoNodeIDAvailable();
     }
 
+    /**
+     * Register a gateway bound on RMI
+     *
+     * @param nodeID : The gateway node ID
+     * @throws RemoteException
+     */
+    public void registerGateway(int nodeID) throws RemoteException {
+        try {
+            gatewaysDirectory.register(nodeID);
+            printTrace(DEBUG, OUT, "Register gateway " + nodeID);
+        } catch (NotBoundException | MalformedURLException e) {
+            System.err.println("Unable to register the gateway " + nodeID + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Get the network parameters array
      *
@@ -177,29 +221,74 @@ public class DistributorManager extends UnicastRemoteObject implements IDistribu
      *
      * @param msg     : The string message to send
      * @param nodesID : The address list of node
+     * @return The query ID to wait for, or NO_QUERY_ID
      * @throws RemoteException
+     * @throws QueryQueueFull
      */
-    public void sendMessageToRMI(String msg, List<Integer> nodesID) throws RemoteException {
-        printTrace(DEBUG, OUT, "DistributorManager.sendMessageToRMI: " + msg + " | nodesID: " + nodesID);
-        // Block util the end of the previous query
-        while (isQueryInProgress.get()) {
-        }
+    public int sendMessageToRMI(String msg, List<Integer> nodesID) throws RemoteException, QueryQueueFull {
+        return sendMessageToRMI(msg, nodesID, 0);
+    }
 
-        switch (msg) {
+    /**
+     * Send a message to an RMI node, served from the fleet snapshot for the nodes fresh enough
+     *
+     * @param msg          : The string message to send
+     * @param nodesID      : The address list of node
+     * @param maxStaleness : The max age accepted for the polled fleet snapshot, in milliseconds (0 for the live nodes only)
+     * @return The query ID to wait for, or NO_QUERY_ID
+     * @throws RemoteException
+     * @throws QueryQueueFull
+     */
+    public int sendMessageToRMI(String msg, List<Integer> nodesID, long maxStaleness) throws RemoteException, QueryQueueFull {
+        printTrace(DEBUG, OUT, "DistributorManager.sendMessageToRMI: " + msg + " | nodesID: " + nodesID + " | maxStaleness: " + maxStaleness);
+
+        // The query timeout is adapted to the latency observed on the queried subtrees
+        long timeout = latencyEstimator.getTimeout(nodesID);
+        MessageType type = MessageType.fromName(msg);
+        if (type == null) {
+            return NO_QUERY_ID;
+        }
+        Query query;
+        StockQuery stockQuery = null;
+        switch (type) {
             case QUERY_GET_MONEY:
-                setQuery(REPLY_GET_MONEY, true, nodesID.size());
-                broadcastMessage(msg, nodesID);
+                query = newQuery(new MoneyQuery(lastQueryID.incrementAndGet(), nodesID, timeout, addressCount, snapshot));
                 break;
 
             case QUERY_GET_STOCK:
-                setQuery(REPLY_GET_STOCK, true, nodesID.size());
-                broadcastMessage(msg, nodesID);
+                stockQuery = new StockQuery(lastQueryID.incrementAndGet(), nodesID, timeout, addressCount, productsDatabase, snapshot);
+                query = newQuery(stockQuery);
                 break;
 
             default:
                 // TODO complete here with internal query message
-                break;
+                return NO_QUERY_ID;
+        }
+
+        // The live nodes (kept up to date by their telemetry) are read locally, only the missing or stale nodes are queried on the network
+        List<Integer> nodesToQuery = query.loadFromSnapshot(nodesID, maxStaleness);
+        if (nodesToQuery.size() >= 1) {
+            if (stockQuery == null) {
+                broadcastMessage(msg, query, NodeSet.of(nodesToQuery), null);
+            } else {
+                // The known stocks are sent as their versions, each node gets its own one: the distributors reply only
+                // their changes since then, the distributors of unknown stock are queried apart for their full stock
+                stockQuery.loadBaselines(nodesToQuery);
+                List<Integer> deltaNodesID = new ArrayList<>();
+                List<Integer> fullNodesID = new ArrayList<>();
+                for (int nodeID : nodesToQuery) {
+                    (stockQuery.hasBaseline(nodeID) ? deltaNodesID : fullNodesID).add(nodeID);
+                }
+                if (deltaNodesID.size() >= 1) {
+                    NodeSet deltaNodes = NodeSet.of(deltaNodesID);
+                    broadcastMessage(msg, query, deltaNodes, stockQuery.getStockVersions(deltaNodes));
+                }
+                if (fullNodesID.size() >= 1) {
+                    broadcastMessage(msg, query, NodeSet.of(fullNodesID), null);
+                }
+            }
         }
+        return query.getId();
     }
 
     /**
@@ -209,79 +298,67 @@ public class DistributorManager extends UnicastRemoteObject implements IDistribu
      * @throws RemoteException
      */
     public void readMessageFromRMI(String msg) throws RemoteException {
-        printTrace(DEBUG, OUT, "DistributorManager.readMessageFromRMI: " + msg);
-
-        try {
-            JSONObject json = (JSONObject) new JSONParser().parse(msg);
-            String query = (String) json.get("query");
-
-            switch (query) {
-                case REPLY_NEW_NODE_CONNEXION: {
-                    int nodeID = jsonGetToInteger("node_id", json);
-                    connectedDistributors.put(nodeID, NODE_CONNECTED);
-                    break;
-                }
-
-                case ADD_TO_LOGS_HISTORY: {
-                    int nodeID = jsonGetToInteger("node_id", json);
-                    String log = (String) json.get("log");
-                    logsHistory.add(log);
-                    break;
-                }
+        readMessage(msg, new JSONParser());
+    }
 
-                default:
-                    if (isQueryInProgress.get() && expectedReply.equals(query)) {
-                        buffer.add(msg);
-                        expectedRepliesCount.decrementAndGet();
-                    }
-                    break;
-            }
-        } catch (ParseException e) {
-            System.err.println("DistributorManager.readMessageFromRMI ParseException: " + e.getMessage());
+    /**
+     * Read a batch of messages from a RMI node
+     *
+     * @param msgs : The JSON string messages to read
+     * @throws RemoteException
+     */
+    public void readMessagesFromRMI(List<String> msgs) throws RemoteException {
+        JSONParser parser = new JSONParser();
+        for (String msg : msgs) {
+            readMessage(msg, parser);
         }
     }
 
     /**
      * Wait for the end of the query before to continue the execution
      *
+     * @param queryID : The query ID to wait for
      * @throws RemoteException
      */
-    public void waitForEndQuery() throws RemoteException {
-        int timeout = 0;
-        while (isQueryInProgress.get()) {
-            if (timeout >= QUERY_TIMEOUT) {
-                System.err.println("Request timeout");
-            }
-
-            if (expectedRepliesCount.get() == 0 || timeout >= QUERY_TIMEOUT) {
-                switch (expectedReply) {
-                    case REPLY_GET_MONEY:
-                        printToAdmin(execReplyGetMoney());
-                        break;
-
-                    case REPLY_GET_STOCK:
-                        printToAdmin(execReplyGetStock());
-                        break;
-
-                    default:
-                        for (String msg : buffer) {
-                            printToAdmin(msg);
-                        }
-                        break;
-                }
-
-                buffer.clear();
-                setQuery("", false, 0);
-                break;
-            }
-
+    public void waitForEndQuery(int queryID) throws RemoteException {
+        Query query = queries.get(queryID);
+        if (query != null) {
             try {
-                Thread.sleep(THREAD_SLEEP_INTERVAL);
-                timeout += THREAD_SLEEP_INTERVAL;
+                query.getCompletion().get();
             } catch (InterruptedException e) {
                 System.err.println("InterruptedException: " + e.getMessage());
+                return;
+            } catch (ExecutionException e) {
+                System.err.println("ExecutionException: " + e.getMessage());
             }
+            queries.remove(queryID);
+            printToAdmin(getQueryResult(query));
+        }
+    }
+
+    /**
+     * Call the listener at the end of the query, immediately if the query has already ended
+     *
+     * @param queryID  : The query ID to listen
+     * @param listener : The listener to call
+     * @return false if the query is unknown
+     * @throws RemoteException
+     */
+    public boolean addQueryListener(int queryID, IQueryListener listener) throws RemoteException {
+        Query query = queries.get(queryID);
+        if (query == null) {
+            return false;
         }
+
+        query.getCompletion().thenAcceptAsync(endedQuery -> {
+            queries.remove(queryID);
+            try {
+                listener.onEndQuery(queryID, getQueryResult(endedQuery));
+            } catch (RemoteException e) {
+                System.err.println("DistributorManager.addQueryListener RemoteException: " + e.getMessage());
+            }
+        }, listenersExecutor);
+        return true;
     }
 
     /**
@@ -294,8 +371,10 @@ public class DistributorManager extends UnicastRemoteObject implements IDistribu
     public boolean freeNodeID(int nodeID) throws RemoteException {
         if (connectedDistributors.containsKey(nodeID)) {
             connectedDistributors.put(nodeID, NODE_NOT_CONNECTED);
+            snapshot.invalidate(nodeID);
             if (connectedGateways.containsKey(nodeID)) {
                 connectedGateways.put(nodeID, NODE_NOT_CONNECTED);
+                gatewaysDirectory.invalidate(nodeID);
                 printTrace(DEBUG, OUT, "Release Gateway nodeID " + nodeID);
             }
             printTrace(DEBUG, OUT, "Release nodeID " + nodeID);
@@ -320,6 +399,34 @@ public class DistributorManager extends UnicastRemoteObject implements IDistribu
         }
     }
 
+    /**
+     * Print the DistributorManager statistics to the Administrative Interface
+     *
+     * @throws RemoteException
+     */
+    public void displayStatistics() throws RemoteException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\nDistributorManager statistics:\n");
+        sb.append(" - Queries in progress: ").append(queries.values().stream().filter(query -> !query.getCompletion().isDone()).count()).append("\n");
+        sb.append(" - ").append(queryQueue.getStatistics()).append("\n");
+        sb.append(" - ").append(gatewaysDirectory.getStatistics()).append("\n");
+        sb.append(" - ").append(latencyEstimator.getStatistics()).append("\n");
+        sb.append(" - ").append(snapshot.getStatistics()).append("\n");
+        for (Map.Entry<Integer, Boolean> entry : connectedGateways.entrySet()) {
+            if (entry.getValue() != NODE_CONNECTED) {
+                continue;
+            }
+            sb.append(" - Gateway ").append(entry.getKey()).append(" transport:\n");
+            try {
+                String statistics = gatewaysDirectory.lookup(entry.getKey()).getStatistics();
+                sb.append("   ").append(statistics.replace("\n", "\n   ")).append("\n");
+            } catch (Exception e) {
+                sb.append("   unreachable: ").append(e.getMessage()).append("\n");
+            }
+        }
+        printToAdmin(sb.toString());
+    }
+
     // -- Internal Methods ------------------------------------------------------------------------------------------------------
 
     /**
@@ -376,179 +483,211 @@ public class DistributorManager extends UnicastRemoteObject implements IDistribu
     }
 
     /**
-     * Set the in progress query
+     * Read a message from a RMI node
      *
-     * @param query : The in progress query
-     * @param flag  : The query's flag
-     * @param count : The expected query reply count
+     * @param msg    : The JSON string message to read
+     * @param parser : The JSON parser to use
      */
-    private void setQuery(String query, boolean flag, int count) {
-        expectedReply = query;
-        isQueryInProgress.set(flag);
-        expectedRepliesCount.set(count);
-    }
+    private void readMessage(String msg, JSONParser parser) {
+        printTrace(DEBUG, OUT, "DistributorManager.readMessage: " + msg);
+
+        MessageType type = MessageType.fromName(JsonPeek.getString(msg, "query"));
+        if (type != null && type.isTyped()) {
+            // A query reply is read straight into its typed fields
+            Message message = Message.fromJson(msg, type);
+            if (message instanceof Reply) {
+                addReply((Reply) message, msg);
+            } else {
+                System.err.println("DistributorManager.readMessage: unexpected message " + msg);
+            }
+            return;
+        }
 
-    /**
-     * Send a message to an address list
-     *
-     * @param msg     : The message to send
-     * @param nodesID : The address list (nodes ID)
-     */
-    private void broadcastMessage(String msg, List<Integer> nodesID) {
-        if (nodesID.size() >= 1) {
-            // Send to the children gateways
-            for (Map.Entry<Integer, Boolean> entry : connectedGateways.entrySet()) {
-                int gatewayNodeID = entry.getKey();
-                if (hasChildrenQuery(gatewayNodeID, nodesID)) {
-                    // If the gateway is connected
-                    if (entry.getValue() == NODE_CONNECTED) {
-                        try {
-                            String name = "gateway_" + gatewayNodeID;
-                            IRmiGateway gateway = (IRmiGateway) Naming.lookup("rmi://localhost/" + name);
-                            gateway.readMessageFromRMI(msg, nodesID);
-                        } catch (Exception e) {
-                            System.err.println("Unable to get the gateway");
-                            e.printStackTrace();
-                        }
-                    } else {
-                        System.err.println("Unable to connect to the gateway " + gatewayNodeID);
-                    }
+        try {
+            JSONObject json = (JSONObject) parser.parse(msg);
+            if (type == null) {
+                printTrace(DEBUG, ERR, "DistributorManager.readMessage: unknown message " + msg);
+                return;
+            }
+
+            switch (type) {
+                case REPLY_NEW_NODE_CONNEXION: {
+                    int nodeID = jsonGetToInteger("node_id", json);
+                    connectedDistributors.put(nodeID, NODE_CONNECTED);
+                    snapshot.invalidate(nodeID);
+                    break;
+                }
+
+                case PUSH_TELEMETRY:
+                    snapshot.applyTelemetry(json);
+                    break;
+
+                case ADD_TO_LOGS_HISTORY: {
+                    int nodeID = jsonGetToInteger("node_id", json);
+                    String log = (String) json.get("log");
+                    logsHistory.add(log);
+                    break;
                 }
+
+                default:
+                    printTrace(DEBUG, ERR, "DistributorManager.readMessage: unexpected message " + msg);
+                    break;
             }
+        } catch (ParseException e) {
+            System.err.println("DistributorManager.readMessage ParseException: " + e.getMessage());
         }
     }
 
     /**
-     * Check if gateway's children are expected
+     * Route a reply to its query, whatever the reply type (e.g. a bad request reply)
      *
-     * @param gatewayNodeID : The gateway address
-     * @param nodesID       : The recipient address list (nodes ID)
-     * @return The boolean status
+     * @param reply : The typed reply
+     * @param msg   : The JSON string message of the reply
      */
-    private boolean hasChildrenQuery(int gatewayNodeID, List<Integer> nodesID) {
-        for (int nodeID : nodesID) {
-            if (nodeID >= gatewayNodeID && nodeID < gatewayNodeID + childrenNodesInformation[INTERVAL_STEP]) {
-                return true;
+    private void addReply(Reply reply, String msg) {
+        Query inProgressQuery = queries.get(reply.getQueryID());
+        if (inProgressQuery != null) {
+            if (inProgressQuery.addReply(reply)) {
+                latencyEstimator.addSample(reply.getNodeID(), inProgressQuery.getElapsedTime());
             }
+        } else {
+            printTrace(DEBUG, ERR, "DistributorManager.readMessage: no query in progress for " + msg);
         }
-        return false;
     }
 
     /**
-     * Tools to print the quantity columns
+     * Register a new in progress query
      *
-     * @param str : The quantity to print
-     * @param len : The label length
-     * @return The formatted string
+     * @param query : The query to register
+     * @return The registered query
+     * @throws QueryQueueFull
      */
-    private String printQuantity(String str, int len) {
-        return String.format("%" + (len - 2) + "s  ", str);
+    private Query newQuery(Query query) throws QueryQueueFull {
+        long waitTime = queryQueue.admit();
+        printTrace(DEBUG && waitTime > 0, OUT, "DistributorManager.newQuery: admitted after " + waitTime + "ms");
+        query.start();
+        queries.put(query.getId(), query);
+
+        // End the query on its deadline, or release its place as soon as all its replies are received
+        // A late subtree is never sampled by its on-time replies, so its timeout is backed off on each expiry
+        // The ended query is forgotten after a while if nobody waits for it
+        ScheduledFuture<?> timeout = queryTimer.schedule(query::expire, query.getDeadline() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        query.getCompletion().thenRun(() -> {
+            timeout.cancel(false);
+            queryQueue.release();
+            if (query.isTimedOut()) {
+                latencyEstimator.backOff(query.getMissingNodesID());
+            }
+            queryTimer.schedule(() -> queries.remove(query.getId(), query), QUERY_RESULT_TTL, TimeUnit.MILLISECONDS);
+        });
+        return query;
     }
 
     /**
-     * Execute the query's REPLY_GET_MONEY
+     * Build the result of an ended query
      *
+     * @param query : The ended query
      * @return The formatted string
      */
-    private String execReplyGetMoney() {
-        Map<Integer, Double> distributorsMoney = new TreeMap<>();
-        for (String msg : buffer) {
-            try {
-                JSONObject json = (JSONObject) new JSONParser().parse(msg);
-                if (jsonGetToInteger("status", json) == REPLY_STATUS_CONNECTED) {
-                    int idDistributor = jsonGetToInteger("distributor_id", json);
-                    double money = (double) json.get("distributor_money");
-                    distributorsMoney.put(idDistributor, money);
-                }
-            } catch (ParseException e) {
-                System.err.println("DistributorManager.waitForEndQuery ParseException: " + e.getMessage());
-            }
+    private String getQueryResult(Query query) {
+        if (query.isTimedOut()) {
+            System.err.println("Request timeout");
         }
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("\nResult of querying to get the Distributors stocks:\n");
-        if (distributorsMoney.size() > 0) {
-            // Build the Array Header
-            sb.append(String.format("%-18s", "")).append("|").append(" Money").append("\n");
-
-            // Build the Array Body
-            for (Map.Entry<Integer, Double> distributor : distributorsMoney.entrySet()) {
-                int idDistributor = distributor.getKey();
-                double money = distributor.getValue();
-                sb.append(String.format("%-18s", " Distributor #" + idDistributor)).append("|").append(String.format("  %3.2f%s", money, CURRENCY)).append("\n");
-            }
-        } else {
-            sb.append("Unable to get the distributors money\n");
-        }
-        return sb.toString();
+        return query.getResult();
     }
 
     /**
-     * Execute the query's REPLY_GET_STOCK
+     * Send a message to an address list
      *
-     * @return The formatted string
+     * @param msg           : The message to send
+     * @param query         : The query
+     * @param nodes         : The recipient nodes, shared by all the gateways and sent in its compressed form
+     * @param stockVersions : The stock version known of each node, aligned with the node set, or null
      */
-    private String execReplyGetStock() {
-        Map<Integer, Map<Integer, Integer>> distributorsStock = new TreeMap<>();
-        for (String msg : buffer) {
-            try {
-                Map<Integer, Integer> stock = new TreeMap<>();
-                JSONObject json = (JSONObject) new JSONParser().parse(msg);
-                if (jsonGetToInteger("status", json) == REPLY_STATUS_CONNECTED) {
-                    int idDistributor = jsonGetToInteger("distributor_id", json);
-                    JSONObject distributor_stock = (JSONObject) json.get("distributor_stock");
-                    JSONArray idArray = (JSONArray) distributor_stock.get("id");
-                    JSONArray quantityArray = (JSONArray) distributor_stock.get("quantity");
-                    if (idArray != null && quantityArray != null) {
-                        if (idArray.size() == quantityArray.size()) {
-                            int len = idArray.size();
-                            for (int i = 0; i < len; i++) {
-                                int id = (int) ((long) idArray.get(i));
-                                int quantity = (int) ((long) quantityArray.get(i));
-                                stock.put(id, quantity);
-                            }
-                        } else {
-                            // Size Error
+    private void broadcastMessage(String msg, Query query, NodeSet nodes, long[] stockVersions) {
+        if (nodes.size() >= 1) {
+            // Send to the children gateways, all at once
+            Map<Integer, Future<?>> calls = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Boolean> entry : connectedGateways.entrySet()) {
+                int gatewayNodeID = entry.getKey();
+                if (hasChildrenQuery(gatewayNodeID, nodes)) {
+                    // If the gateway is connected
+                    if (entry.getValue() == NODE_CONNECTED) {
+                        // A gateway still busy with its previous calls is skipped, its nodes are reported missing by the query
+                        AtomicInteger gatewayCalls = gatewaysCalls.computeIfAbsent(gatewayNodeID, nodeID -> new AtomicInteger(0));
+                        if (gatewayCalls.incrementAndGet() > FAN_OUT_MAX_CALLS_BY_GATEWAY) {
+                            gatewayCalls.decrementAndGet();
+                            System.err.println("The gateway " + gatewayNodeID + " is not responding, skipped");
+                            continue;
                         }
+                        calls.put(gatewayNodeID, fanOutExecutor.submit(() -> {
+                            try {
+                                sendMessageToGateway(gatewayNodeID, msg, query, nodes, stockVersions);
+                            } finally {
+                                gatewayCalls.decrementAndGet();
+                            }
+                        }));
                     } else {
-                        // Null Error
+                        System.err.println("Unable to connect to the gateway " + gatewayNodeID);
                     }
-                    distributorsStock.put(idDistributor, stock);
                 }
-            } catch (ParseException e) {
-                System.err.println("DistributorManager.waitForEndQuery ParseException: " + e.getMessage());
             }
-        }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("\nResult of querying to get the Distributors stocks:\n");
-        if (distributorsStock.size() > 0) {
-            // Build the Array Header
-            sb.append(String.format("%-18s", "")).append("|");
-            for (Map.Entry<Integer, String> product : productsDatabase.entrySet()) {
-                sb.append(" ").append(product.getValue()).append(" ").append("|");
-            }
-            sb.append("\n");
-
-            // Build the Array Body
-            for (Map.Entry<Integer, Map<Integer, Integer>> distributor : distributorsStock.entrySet()) {
-                int idDistributor = distributor.getKey();
-                Map<Integer, Integer> stock = distributor.getValue();
-                sb.append(String.format("%-18s", " Distributor #" + idDistributor)).append("|");
-                for (Map.Entry<Integer, String> product : productsDatabase.entrySet()) {
-                    int idProduct = product.getKey();
-                    int len = (product.getValue().length() + 2);
-                    if (stock.containsKey(idProduct)) {
-                        sb.append(printQuantity(stock.get(idProduct).toString(), len)).append("|");
-                    } else {
-                        sb.append(printQuantity("-", len)).append("|");
-                    }
+            // Wait for the slowest gateway, each call is bounded by the same deadline
+            long deadline = System.currentTimeMillis() + FAN_OUT_CALL_TIMEOUT;
+            for (Map.Entry<Integer, Future<?>> call : calls.entrySet()) {
+                try {
+                    call.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    call.getValue().cancel(true);
+                    System.err.println("Timeout while sending to the gateway " + call.getKey());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    System.err.println("Unable to send to the gateway " + call.getKey() + ": " + e.getCause());
                 }
-                sb.append("\n");
             }
-        } else {
-            sb.append("Unable to get the distributors stocks\n");
         }
-        return sb.toString();
+    }
+
+    /**
+     * Send a message to a RMI gateway
+     *
+     * @param gatewayNodeID : The gateway address
+     * @param msg           : The message to send
+     * @param query         : The query
+     * @param nodes         : The queried nodes
+     * @param stockVersions : The stock version known of each node, aligned with the node set, or null
+     */
+    private void sendMessageToGateway(int gatewayNodeID, String msg, Query query, NodeSet nodes, long[] stockVersions) {
+        // The gateway's clock may differ from this one: send the time left to reply, not the deadline
+        long budget = query.getDeadline() - System.currentTimeMillis();
+        if (budget <= 0) {
+            printTrace(DEBUG, ERR, "DistributorManager.sendMessageToGateway: deadline passed, drop the query #" + query.getId() + " to " + gatewayNodeID);
+            return;
+        }
+        try {
+            IRmiGateway gateway = gatewaysDirectory.lookup(gatewayNodeID);
+            gateway.readMessageFromRMI(msg, query.getId(), budget, nodes, stockVersions);
+        } catch (RemoteException e) {
+            // The stub is stale, resolve it again on the next query
+            gatewaysDirectory.invalidate(gatewayNodeID);
+            System.err.println("Unable to reach the gateway " + gatewayNodeID + ": " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Unable to get the gateway");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Check if gateway's children are expected
+     *
+     * @param gatewayNodeID : The gateway address
+     * @param nodes         : The recipient nodes
+     * @return The boolean status
+     */
+    private boolean hasChildrenQuery(int gatewayNodeID, NodeSet nodes) {
+        return nodes.intersects(gatewayNodeID, gatewayNodeID + childrenNodesInformation[INTERVAL_STEP]);
     }
 }
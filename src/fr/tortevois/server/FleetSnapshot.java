@@ -0,0 +1,272 @@
+package fr.tortevois.server;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fr.tortevois.message.StockReply.NO_STOCK_VERSION;
+import static fr.tortevois.utils.Utils.jsonGetToInteger;
+
+public class FleetSnapshot {
+
+    public final static long NO_SEQUENCE = -1;
+    private final static long NEVER = -1;
+
+    private final long ttl;
+    private final long liveTtl;
+    private final int[] productsID; // Sorted products ID, index of the stock columns
+    private final int[][] stocks; // By node ID then by product index, null if unknown
+    private final long[] stocksTime;
+    private final long[] stocksSequence; // Last telemetry sequence applied, the stock is live if it is known and the telemetry recent
+    private final long[] stocksVersion; // Stock version of the last reply, the base of the next stock delta query
+    private final double[] money; // By node ID, NaN if unknown
+    private final long[] moneyTime;
+    private final long[] moneySequence;
+    private final long[] telemetryTime; // By node ID: the entries of a node are live only while its telemetry is received
+
+    // Statistics
+    private final AtomicLong hitsCount = new AtomicLong(0);
+    private final AtomicLong missesCount = new AtomicLong(0);
+    private final AtomicLong telemetryCount = new AtomicLong(0);
+    private final AtomicLong telemetryGapsCount = new AtomicLong(0);
+
+    /**
+     * The fleet snapshot's constructor
+     *
+     * @param addressCount     : The address count of the network
+     * @param ttl              : The time to live of a polled snapshot entry, in milliseconds
+     * @param liveTtl          : The time to live of a live snapshot entry since the last telemetry frame of its node, in milliseconds
+     * @param productsDatabase : The products name by product ID
+     */
+    public FleetSnapshot(int addressCount, long ttl, long liveTtl, Map<Integer, String> productsDatabase) {
+        this.ttl = ttl;
+        this.liveTtl = liveTtl;
+        productsID = new int[productsDatabase.size()];
+        int i = 0;
+        for (int productID : productsDatabase.keySet()) {
+            productsID[i++] = productID;
+        }
+        stocks = new int[addressCount][];
+        stocksTime = new long[addressCount];
+        stocksSequence = new long[addressCount];
+        stocksVersion = new long[addressCount];
+        money = new double[addressCount];
+        moneyTime = new long[addressCount];
+        moneySequence = new long[addressCount];
+        telemetryTime = new long[addressCount];
+        for (int nodeID = 0; nodeID < addressCount; nodeID++) {
+            invalidate(nodeID);
+        }
+    }
+
+    /**
+     * Update the stock of a node from a query reply
+     *
+     * @param nodeID       : The node ID
+     * @param stock        : The quantities by product index, not modified afterward
+     * @param sequence     : The telemetry sequence of the distributor when it replied, or NO_SEQUENCE
+     * @param stockVersion : The stock version of the distributor when it replied, or NO_STOCK_VERSION
+     */
+    public synchronized void updateStock(int nodeID, int[] stock, long sequence, long stockVersion) {
+        if (sequence != NO_SEQUENCE && sequence < stocksSequence[nodeID]) {
+            return; // Older than the telemetry already applied
+        }
+        stocks[nodeID] = stock;
+        stocksTime[nodeID] = System.currentTimeMillis();
+        stocksSequence[nodeID] = sequence;
+        stocksVersion[nodeID] = stockVersion;
+    }
+
+    /**
+     * Get the base of a stock delta query: the stocks known of the queried nodes, and their versions
+     * (each version is on the clock of its node, it is only sent back to this node: a stock updated by the telemetry
+     * since its version is still a valid base, the delta may overwrite some known quantities but misses none)
+     *
+     * @param nodesID   : The address list of the queried nodes
+     * @param baselines : The stocks by node ID, filled with the known stocks of the queried nodes, left null for the unknown ones
+     * @param versions  : The stock versions by node ID, filled with the versions of the known stocks
+     */
+    public synchronized void getStockBaselines(List<Integer> nodesID, int[][] baselines, long[] versions) {
+        for (int nodeID : nodesID) {
+            if (stocks[nodeID] == null || stocksVersion[nodeID] == NO_STOCK_VERSION) {
+                continue; // Queried for its full stock
+            }
+            baselines[nodeID] = stocks[nodeID];
+            versions[nodeID] = stocksVersion[nodeID];
+        }
+    }
+
+    /**
+     * Update the money of a node from a query reply
+     *
+     * @param nodeID   : The node ID
+     * @param amount   : The money amount
+     * @param sequence : The telemetry sequence of the distributor when it replied, or NO_SEQUENCE
+     */
+    public synchronized void updateMoney(int nodeID, double amount, long sequence) {
+        if (sequence != NO_SEQUENCE && sequence < moneySequence[nodeID]) {
+            return; // Older than the telemetry already applied
+        }
+        money[nodeID] = amount;
+        moneyTime[nodeID] = System.currentTimeMillis();
+        moneySequence[nodeID] = sequence;
+    }
+
+    /**
+     * Apply a PUSH_TELEMETRY frame: a full stock, the changed quantities since the previous sequence, or a keep-alive
+     *
+     * @param json : The JSON telemetry frame
+     */
+    public synchronized void applyTelemetry(JSONObject json) {
+        int nodeID = jsonGetToInteger("node_id", json);
+        if (nodeID < 0 || nodeID >= stocks.length) {
+            return;
+        }
+        long sequence = (long) json.get("sequence");
+        long now = System.currentTimeMillis();
+        telemetryCount.incrementAndGet();
+        telemetryTime[nodeID] = now;
+
+        // Nothing changed since the sequence: the entries up to it stay live, the older ones missed a lost frame
+        if (Boolean.TRUE.equals(json.get("keep_alive"))) {
+            if (stocksSequence[nodeID] != NO_SEQUENCE && stocksSequence[nodeID] < sequence) {
+                telemetryGapsCount.incrementAndGet();
+                stocksSequence[nodeID] = NO_SEQUENCE;
+                stocksTime[nodeID] = NEVER;
+            }
+            if (moneySequence[nodeID] != NO_SEQUENCE && moneySequence[nodeID] < sequence) {
+                moneySequence[nodeID] = NO_SEQUENCE;
+                moneyTime[nodeID] = NEVER;
+            }
+            return;
+        }
+        boolean isFull = (boolean) json.get("full");
+
+        // The money is absolute: always apply the newest one (a full frame follows a restart of the distributor)
+        if (isFull || sequence > moneySequence[nodeID]) {
+            money[nodeID] = (double) json.get("distributor_money");
+            moneyTime[nodeID] = now;
+            moneySequence[nodeID] = sequence;
+        }
+
+        // The stock is a delta: apply it only on top of the previous sequence, else wait for the next poll
+        int[] stock;
+        if (isFull) {
+            stock = new int[productsID.length];
+            Arrays.fill(stock, StockQuery.NO_QUANTITY);
+        } else if (stocks[nodeID] != null && stocksSequence[nodeID] == sequence - 1) {
+            stock = Arrays.copyOf(stocks[nodeID], productsID.length); // The rows are shared with the queries
+        } else {
+            if (sequence > stocksSequence[nodeID]) {
+                telemetryGapsCount.incrementAndGet();
+                stocksSequence[nodeID] = NO_SEQUENCE;
+                stocksTime[nodeID] = NEVER;
+            }
+            return;
+        }
+
+        JSONObject distributor_stock = (JSONObject) json.get("distributor_stock");
+        JSONArray idArray = (JSONArray) distributor_stock.get("id");
+        JSONArray quantityArray = (JSONArray) distributor_stock.get("quantity");
+        int len = Math.min(idArray.size(), quantityArray.size());
+        for (int i = 0; i < len; i++) {
+            int index = Arrays.binarySearch(productsID, (int) ((long) idArray.get(i)));
+            if (index >= 0) {
+                stock[index] = (int) ((long) quantityArray.get(i));
+            }
+        }
+        stocks[nodeID] = stock;
+        stocksTime[nodeID] = now;
+        stocksSequence[nodeID] = sequence;
+    }
+
+    /**
+     * Get the stock of a node, if it is live or fresh enough
+     *
+     * @param nodeID       : The node ID
+     * @param maxStaleness : The max age accepted for a polled entry, in milliseconds (bounded by the time to live)
+     * @return The quantities by product index, or null
+     */
+    public synchronized int[] getStock(int nodeID, long maxStaleness) {
+        if (stocks[nodeID] != null && (isLive(nodeID, stocksSequence[nodeID]) || isFresh(stocksTime[nodeID], maxStaleness))) {
+            hitsCount.incrementAndGet();
+            return stocks[nodeID];
+        }
+        missesCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Get the money of a node, if it is live or fresh enough
+     *
+     * @param nodeID       : The node ID
+     * @param maxStaleness : The max age accepted for a polled entry, in milliseconds (bounded by the time to live)
+     * @return The money amount, or NaN
+     */
+    public synchronized double getMoney(int nodeID, long maxStaleness) {
+        if (!Double.isNaN(money[nodeID]) && (isLive(nodeID, moneySequence[nodeID]) || isFresh(moneyTime[nodeID], maxStaleness))) {
+            hitsCount.incrementAndGet();
+            return money[nodeID];
+        }
+        missesCount.incrementAndGet();
+        return Double.NaN;
+    }
+
+    /**
+     * Forget a node
+     *
+     * @param nodeID : The node ID
+     */
+    public synchronized void invalidate(int nodeID) {
+        stocks[nodeID] = null;
+        stocksTime[nodeID] = NEVER;
+        stocksSequence[nodeID] = NO_SEQUENCE;
+        stocksVersion[nodeID] = NO_STOCK_VERSION;
+        money[nodeID] = Double.NaN;
+        moneyTime[nodeID] = NEVER;
+        moneySequence[nodeID] = NO_SEQUENCE;
+        telemetryTime[nodeID] = NEVER;
+    }
+
+    /**
+     * Get the snapshot statistics
+     *
+     * @return The formatted string
+     */
+    public synchronized String getStatistics() {
+        int liveCount = 0;
+        for (int nodeID = 0; nodeID < stocks.length; nodeID++) {
+            if (isLive(nodeID, stocksSequence[nodeID])) {
+                liveCount++;
+            }
+        }
+        return "Fleet snapshot: " + liveCount + " live nodes, TTL " + ttl + "ms (live " + liveTtl + "ms), " + hitsCount.get() + " hits, " + missesCount.get() + " misses, "
+                + telemetryCount.get() + " telemetry frames (" + telemetryGapsCount.get() + " gaps)";
+    }
+
+    /**
+     * Check if an entry is live: kept up to date by the telemetry of its node, received lately and without gap
+     *
+     * @param nodeID   : The node ID
+     * @param sequence : The telemetry sequence of the entry
+     * @return The boolean status
+     */
+    private boolean isLive(int nodeID, long sequence) {
+        return sequence != NO_SEQUENCE && telemetryTime[nodeID] != NEVER && (System.currentTimeMillis() - telemetryTime[nodeID]) <= liveTtl;
+    }
+
+    /**
+     * Check if a polled entry is fresh enough
+     *
+     * @param time         : The entry update time
+     * @param maxStaleness : The max age accepted, in milliseconds
+     * @return The boolean status
+     */
+    private boolean isFresh(long time, long maxStaleness) {
+        return time != NEVER && maxStaleness > 0 && (System.currentTimeMillis() - time) <= Math.min(maxStaleness, ttl);
+    }
+}
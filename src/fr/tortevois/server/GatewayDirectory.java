@@ -0,0 +1,90 @@
+package fr.tortevois.server;
+
+import fr.tortevois.gateway.IRmiGateway;
+
+import java.net.MalformedURLException;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fr.tortevois.gateway.IRmiGateway.GATEWAY_RMI_NAME_PREFIX;
+
+public class GatewayDirectory {
+
+    private final Map<Integer, IRmiGateway> stubs = new ConcurrentHashMap<>(); // RMI gateways stubs, by node ID
+
+    // Statistics
+    private final AtomicLong hitsCount = new AtomicLong(0);
+    private final AtomicLong missesCount = new AtomicLong(0);
+    private final AtomicLong evictionsCount = new AtomicLong(0);
+
+    /**
+     * Resolve and cache the stub of a registered gateway
+     *
+     * @param nodeID : The gateway node ID
+     * @throws RemoteException
+     * @throws NotBoundException
+     * @throws MalformedURLException
+     */
+    public void register(int nodeID) throws RemoteException, NotBoundException, MalformedURLException {
+        stubs.put(nodeID, resolve(nodeID));
+    }
+
+    /**
+     * Get the stub of a gateway, resolved from the RMI registry if it is not cached
+     *
+     * @param nodeID : The gateway node ID
+     * @return The gateway stub
+     * @throws RemoteException
+     * @throws NotBoundException
+     * @throws MalformedURLException
+     */
+    public IRmiGateway lookup(int nodeID) throws RemoteException, NotBoundException, MalformedURLException {
+        IRmiGateway gateway = stubs.get(nodeID);
+        if (gateway != null) {
+            hitsCount.incrementAndGet();
+            return gateway;
+        }
+
+        missesCount.incrementAndGet();
+        gateway = resolve(nodeID);
+        stubs.put(nodeID, gateway);
+        return gateway;
+    }
+
+    /**
+     * Remove the stub of a gateway from the cache, it will be resolved again on the next lookup
+     *
+     * @param nodeID : The gateway node ID
+     */
+    public void invalidate(int nodeID) {
+        if (stubs.remove(nodeID) != null) {
+            evictionsCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the directory statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        return "Gateways directory: " + stubs.size() + " stubs cached, " + hitsCount.get() + " hits, " + missesCount.get() + " misses, " + evictionsCount.get() + " evictions";
+    }
+
+    /**
+     * Resolve the stub of a gateway from the RMI registry
+     *
+     * @param nodeID : The gateway node ID
+     * @return The gateway stub
+     * @throws RemoteException
+     * @throws NotBoundException
+     * @throws MalformedURLException
+     */
+    private IRmiGateway resolve(int nodeID) throws RemoteException, NotBoundException, MalformedURLException {
+        return (IRmiGateway) Naming.lookup("rmi://localhost/" + GATEWAY_RMI_NAME_PREFIX + nodeID);
+    }
+}
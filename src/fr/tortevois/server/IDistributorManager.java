@@ -1,6 +1,7 @@
 package fr.tortevois.server;
 
 import fr.tortevois.exception.NoNodeIDAvailable;
+import fr.tortevois.exception.QueryQueueFull;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
@@ -14,6 +15,28 @@ public interface IDistributorManager extends Remote {
 
     int THREAD_SLEEP_INTERVAL = 250;
     int QUERY_TIMEOUT = 15 * 1000;
+    int QUERY_MIN_TIMEOUT = 200;
+    int NO_QUERY_ID = -1;
+
+    // Query admission parameters
+    int MAX_QUERIES_IN_PROGRESS = 4;
+    int QUERY_QUEUE_MAX_SIZE = 16;
+    int QUERY_ADMISSION_TIMEOUT = QUERY_TIMEOUT;
+    int QUERY_RESULT_TTL = 60 * 1000; // An ended query is kept for its waiter or listener, then forgotten
+
+    // Fleet snapshot parameters
+    int SNAPSHOT_TTL = 60 * 1000;
+    int SNAPSHOT_LIVE_TTL = 30 * 1000; // A live node without telemetry since is polled again (its last frame may be lost, or the node dead)
+
+    // Gateways fan-out parameters
+    int FAN_OUT_POOL_SIZE = 8;
+    int FAN_OUT_CALL_TIMEOUT = 5 * 1000;
+    int FAN_OUT_MAX_CALLS_BY_GATEWAY = 2; // The calls in progress to a gateway, a hung gateway can't hold the whole pool
+    // The blocking RMI calls are not interrupted by the cancel of their fan-out call: the RMI runtime bounds them, with a JVM-wide
+    // property read on its first call. Set by DistributorManagerBootloader unless given on the command line, as a launch option
+    // (-Dsun.rmi.transport.tcp.responseTimeout=<ms>) for the other processes hosting the manager
+    String RMI_RESPONSE_TIMEOUT_PROPERTY = "sun.rmi.transport.tcp.responseTimeout";
+    int RMI_RESPONSE_TIMEOUT = FAN_OUT_CALL_TIMEOUT;
 
     // Available methods on RMI
 
@@ -58,6 +81,14 @@ public interface IDistributorManager extends Remote {
      */
     int getAvailableNodeID() throws RemoteException, NoNodeIDAvailable;
 
+    /**
+     * Register a gateway bound on RMI
+     *
+     * @param nodeID : The gateway node ID
+     * @throws RemoteException
+     */
+    void registerGateway(int nodeID) throws RemoteException;
+
     /**
      * Get the network parameters array
      *
@@ -71,9 +102,23 @@ public interface IDistributorManager extends Remote {
      *
      * @param msg     : The string message to send
      * @param nodesID : The address list of node
+     * @return The query ID to wait for, or NO_QUERY_ID
      * @throws RemoteException
+     * @throws QueryQueueFull
      */
-    void sendMessageToRMI(String msg, List<Integer> nodesID) throws RemoteException;
+    int sendMessageToRMI(String msg, List<Integer> nodesID) throws RemoteException, QueryQueueFull;
+
+    /**
+     * Send a message to an RMI node, served from the fleet snapshot for the nodes fresh enough
+     *
+     * @param msg          : The string message to send
+     * @param nodesID      : The address list of node
+     * @param maxStaleness : The max age accepted for the polled fleet snapshot, in milliseconds (0 for the live nodes only)
+     * @return The query ID to wait for, or NO_QUERY_ID
+     * @throws RemoteException
+     * @throws QueryQueueFull
+     */
+    int sendMessageToRMI(String msg, List<Integer> nodesID, long maxStaleness) throws RemoteException, QueryQueueFull;
 
     /**
      * Read a message from a RMI node
@@ -83,12 +128,31 @@ public interface IDistributorManager extends Remote {
      */
     void readMessageFromRMI(String msg) throws RemoteException;
 
+    /**
+     * Read a batch of messages from a RMI node
+     *
+     * @param msgs : The JSON string messages to read
+     * @throws RemoteException
+     */
+    void readMessagesFromRMI(List<String> msgs) throws RemoteException;
+
     /**
      * Wait for the end of the query before to continue the execution
      *
+     * @param queryID : The query ID to wait for
+     * @throws RemoteException
+     */
+    void waitForEndQuery(int queryID) throws RemoteException;
+
+    /**
+     * Call the listener at the end of the query, immediately if the query has already ended
+     *
+     * @param queryID  : The query ID to listen
+     * @param listener : The listener to call
+     * @return false if the query is unknown
      * @throws RemoteException
      */
-    void waitForEndQuery() throws RemoteException;
+    boolean addQueryListener(int queryID, IQueryListener listener) throws RemoteException;
 
     /**
      * Make an address to available
@@ -105,4 +169,11 @@ public interface IDistributorManager extends Remote {
      * @throws RemoteException
      */
     void displayLogsHistory() throws RemoteException;
+
+    /**
+     * Print the DistributorManager statistics to the Administrative Interface
+     *
+     * @throws RemoteException
+     */
+    void displayStatistics() throws RemoteException;
 }
\ No newline at end of file
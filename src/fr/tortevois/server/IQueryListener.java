@@ -0,0 +1,18 @@
+package fr.tortevois.server;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+public interface IQueryListener extends Remote {
+
+    // Available methods on RMI
+
+    /**
+     * Called by the DistributorManager at the end of a query
+     *
+     * @param queryID : The ended query ID
+     * @param result  : The formatted result of the query
+     * @throws RemoteException
+     */
+    void onEndQuery(int queryID, String result) throws RemoteException;
+}
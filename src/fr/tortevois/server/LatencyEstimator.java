@@ -0,0 +1,143 @@
+package fr.tortevois.server;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+public class LatencyEstimator {
+
+    // Smoothing factors of the estimations, as for the TCP retransmission timeout (RFC 6298)
+    private final static double ALPHA = 1.0 / 8;
+    private final static double BETA = 1.0 / 4;
+    private final static int DEVIATION_FACTOR = 4;
+    private final static int BACK_OFF_FACTOR = 2;
+
+    private final int lowLimit;
+    private final int step;
+    private final long minTimeout;
+    private final long maxTimeout;
+    private final Map<Integer, double[]> estimations = new ConcurrentSkipListMap<>(); // { smoothed latency, deviation } by subtree
+
+    /**
+     * The latency estimator's constructor
+     *
+     * @param lowLimit   : The first gateway address of the subtrees
+     * @param step       : The step between two subtrees
+     * @param minTimeout : The min timeout, in milliseconds
+     * @param maxTimeout : The max timeout, used while a subtree has no estimation, in milliseconds
+     */
+    public LatencyEstimator(int lowLimit, int step, long minTimeout, long maxTimeout) {
+        this.lowLimit = lowLimit;
+        this.step = Math.max(1, step);
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    /**
+     * Add an observed reply latency of a node to the estimation of its subtree
+     *
+     * @param nodeID  : The node ID which replied
+     * @param latency : The reply latency, in milliseconds
+     */
+    public void addSample(int nodeID, long latency) {
+        double[] estimation = estimations.computeIfAbsent(getSubtree(nodeID), subtree -> new double[]{latency, latency / 2.0});
+        synchronized (estimation) {
+            estimation[1] = (1 - BETA) * estimation[1] + BETA * Math.abs(estimation[0] - latency);
+            estimation[0] = (1 - ALPHA) * estimation[0] + ALPHA * latency;
+        }
+    }
+
+    /**
+     * Back off the timeout of the subtrees of the nodes which have not replied before a query deadline, up to the max timeout
+     *
+     * @param nodesID : The address list of the missing nodes
+     */
+    public void backOff(List<Integer> nodesID) {
+        Set<Integer> subtrees = new HashSet<>();
+        for (int nodeID : nodesID) {
+            subtrees.add(getSubtree(nodeID));
+        }
+        for (int subtree : subtrees) {
+            double[] estimation = estimations.get(subtree);
+            if (estimation == null) {
+                continue; // Already on the max timeout
+            }
+            synchronized (estimation) {
+                // Scale the estimation so that the effective timeout doubles, even when it is clamped on the min timeout
+                double estimated = Math.max(1, estimation[0] + DEVIATION_FACTOR * estimation[1]);
+                double effective = Math.max(minTimeout, estimated);
+                double factor = Math.min(BACK_OFF_FACTOR * effective, maxTimeout) / estimated;
+                if (factor > 1) {
+                    estimation[0] *= factor;
+                    estimation[1] *= factor;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the timeout of a query, adapted to the slowest queried subtree
+     *
+     * @param nodesID : The address list of the queried nodes
+     * @return The timeout, in milliseconds
+     */
+    public long getTimeout(List<Integer> nodesID) {
+        long timeout = minTimeout;
+        for (int nodeID : nodesID) {
+            timeout = Math.max(timeout, getSubtreeTimeout(getSubtree(nodeID)));
+            if (timeout >= maxTimeout) {
+                return maxTimeout;
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * Get the estimator statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder("Subtrees timeouts:");
+        if (estimations.isEmpty()) {
+            sb.append(" no estimation yet, ").append(maxTimeout).append("ms");
+        }
+        for (Map.Entry<Integer, double[]> entry : estimations.entrySet()) {
+            double[] estimation = entry.getValue();
+            synchronized (estimation) {
+                sb.append(String.format(" #%d %.0fms(±%.0f) ->", entry.getKey(), estimation[0], estimation[1]));
+            }
+            sb.append(" ").append(getSubtreeTimeout(entry.getKey())).append("ms");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the subtree of a node, identified by its first ring gateway address
+     *
+     * @param nodeID : The node ID
+     * @return The subtree gateway address
+     */
+    private int getSubtree(int nodeID) {
+        return lowLimit + ((nodeID - lowLimit) / step) * step;
+    }
+
+    /**
+     * Get the timeout of a subtree
+     *
+     * @param subtree : The subtree gateway address
+     * @return The timeout, in milliseconds
+     */
+    private long getSubtreeTimeout(int subtree) {
+        double[] estimation = estimations.get(subtree);
+        if (estimation == null) {
+            return maxTimeout;
+        }
+        synchronized (estimation) {
+            long timeout = (long) Math.ceil(estimation[0] + DEVIATION_FACTOR * estimation[1]);
+            return Math.min(maxTimeout, Math.max(minTimeout, timeout));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package fr.tortevois.server;
+
+import fr.tortevois.message.MessageType;
+import fr.tortevois.message.MoneyReply;
+import fr.tortevois.message.Reply;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static fr.tortevois.gateway.IGateway.*;
+
+public class MoneyQuery extends Query {
+
+    private final FleetSnapshot snapshot;
+    private final double[] distributorsMoney; // By node ID, NaN if not received
+    private int count = 0;
+
+    /**
+     * The money query's constructor
+     *
+     * @param id           : The query ID
+     * @param nodesID      : The address list of the queried nodes
+     * @param timeout      : The query timeout, in milliseconds
+     * @param addressCount : The address count of the network
+     * @param snapshot     : The fleet snapshot to update
+     */
+    public MoneyQuery(int id, List<Integer> nodesID, long timeout, int addressCount, FleetSnapshot snapshot) {
+        super(id, MessageType.REPLY_GET_MONEY, nodesID, timeout);
+        this.snapshot = snapshot;
+        distributorsMoney = new double[addressCount];
+        Arrays.fill(distributorsMoney, Double.NaN);
+    }
+
+    /**
+     * Fold a REPLY_GET_MONEY into the money array
+     *
+     * @param reply : The typed reply
+     */
+    protected void aggregate(Reply reply) {
+        if (reply.getStatus() == REPLY_STATUS_CONNECTED && reply instanceof MoneyReply) {
+            int idDistributor = reply.getNodeID();
+            if (idDistributor >= 0 && idDistributor < distributorsMoney.length) {
+                setMoney(idDistributor, ((MoneyReply) reply).getMoney());
+                snapshot.updateMoney(idDistributor, distributorsMoney[idDistributor], reply.getSequence());
+            }
+        }
+    }
+
+    /**
+     * Fold the money snapshot of a node into the money array
+     *
+     * @param nodeID       : The node ID
+     * @param maxStaleness : The max age accepted, in milliseconds
+     * @return false if the snapshot of the node is missing or too old
+     */
+    protected boolean loadFromSnapshot(int nodeID, long maxStaleness) {
+        double money = snapshot.getMoney(nodeID, maxStaleness);
+        if (Double.isNaN(money)) {
+            return false;
+        }
+        setMoney(nodeID, money);
+        return true;
+    }
+
+    /**
+     * Set the money of a distributor
+     *
+     * @param idDistributor : The distributor node ID
+     * @param money         : The money amount
+     */
+    private void setMoney(int idDistributor, double money) {
+        if (Double.isNaN(distributorsMoney[idDistributor])) {
+            count++;
+        }
+        distributorsMoney[idDistributor] = money;
+    }
+
+    /**
+     * Render the REPLY_GET_MONEY result
+     *
+     * @return The formatted string
+     */
+    protected String render() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\nResult of querying to get the Distributors stocks:\n");
+        if (count > 0) {
+            // Build the Array Header
+            sb.append(String.format("%-18s", "")).append("|").append(" Money").append("\n");
+
+            // Build the Array Body
+            for (int idDistributor = 0; idDistributor < distributorsMoney.length; idDistributor++) {
+                double money = distributorsMoney[idDistributor];
+                if (!Double.isNaN(money)) {
+                    sb.append(String.format("%-18s", " Distributor #" + idDistributor)).append("|").append(String.format("  %3.2f%s", money, CURRENCY)).append("\n");
+                }
+            }
+        } else {
+            sb.append("Unable to get the distributors money\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,220 @@
+package fr.tortevois.server;
+
+import fr.tortevois.message.MessageType;
+import fr.tortevois.message.Reply;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public abstract class Query {
+
+    private final int id;
+    private final MessageType expectedReply;
+    private final BitSet pendingNodesID; // The nodes ID which have not replied yet
+    private final long timeout;
+    private volatile long startTime;
+    private volatile long deadline;
+    private final CompletableFuture<Query> completion;
+    private boolean isTimedOut = false;
+
+    /**
+     * The query's constructor
+     *
+     * @param id            : The query ID, carried by each frame of the query
+     * @param expectedReply : The expected reply
+     * @param nodesID       : The address list of the queried nodes
+     * @param timeout       : The query timeout, in milliseconds
+     */
+    public Query(int id, MessageType expectedReply, List<Integer> nodesID, long timeout) {
+        this.id = id;
+        this.expectedReply = expectedReply;
+        this.pendingNodesID = new BitSet();
+        for (int nodeID : nodesID) {
+            pendingNodesID.set(nodeID);
+        }
+        this.timeout = timeout;
+        start();
+        this.completion = new CompletableFuture<>();
+        if (pendingNodesID.isEmpty()) {
+            completion.complete(this);
+        }
+    }
+
+    /**
+     * Get the query ID
+     *
+     * @return The query ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the expected reply
+     *
+     * @return The expected reply
+     */
+    public MessageType getExpectedReply() {
+        return expectedReply;
+    }
+
+    /**
+     * Stamp the query start time and deadline, re-stamped once the query is admitted to not count its admission wait
+     */
+    public void start() {
+        startTime = System.currentTimeMillis();
+        deadline = startTime + timeout;
+    }
+
+    /**
+     * Get the elapsed time since the query was sent
+     *
+     * @return The elapsed time in milliseconds
+     */
+    public long getElapsedTime() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * Get the query deadline, after which the replies are no more expected
+     *
+     * @return The deadline, in milliseconds since the epoch
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Get the query completion, completed when all the expected replies are received or the query is timed out
+     *
+     * @return The query completion
+     */
+    public CompletableFuture<Query> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Check if the query has ended on its timeout
+     *
+     * @return The boolean status
+     */
+    public synchronized boolean isTimedOut() {
+        return isTimedOut;
+    }
+
+    /**
+     * Fold a reply into the query result, and complete the query with the last expected reply
+     *
+     * @param reply : The typed reply
+     * @return false if the reply is not expected (unknown node, duplicate or late reply)
+     */
+    public boolean addReply(Reply reply) {
+        int nodeID = reply.getNodeID();
+        boolean isComplete;
+        synchronized (this) {
+            if (completion.isDone() || nodeID < 0 || !pendingNodesID.get(nodeID)) {
+                return false;
+            }
+            pendingNodesID.clear(nodeID);
+            aggregate(reply);
+            isComplete = pendingNodesID.isEmpty();
+        }
+        if (isComplete) {
+            completion.complete(this);
+        }
+        return true;
+    }
+
+    /**
+     * Serve the nodes from the fleet snapshot, if it is fresh enough, and complete the query if all the nodes are served
+     *
+     * @param nodesID      : The address list of the queried nodes
+     * @param maxStaleness : The max age accepted, in milliseconds
+     * @return The address list of the nodes to query on the network
+     */
+    public List<Integer> loadFromSnapshot(List<Integer> nodesID, long maxStaleness) {
+        List<Integer> nodesToQuery = new ArrayList<>();
+        boolean isComplete;
+        synchronized (this) {
+            for (int nodeID : nodesID) {
+                if (!pendingNodesID.get(nodeID)) {
+                    continue;
+                }
+                if (loadFromSnapshot(nodeID, maxStaleness)) {
+                    pendingNodesID.clear(nodeID);
+                } else {
+                    nodesToQuery.add(nodeID);
+                }
+            }
+            isComplete = pendingNodesID.isEmpty();
+        }
+        if (isComplete) {
+            completion.complete(this);
+        }
+        return nodesToQuery;
+    }
+
+    /**
+     * End the query on its deadline, with the replies received so far
+     */
+    public void expire() {
+        synchronized (this) {
+            if (completion.isDone()) {
+                return;
+            }
+            isTimedOut = true;
+        }
+        completion.complete(this);
+    }
+
+    /**
+     * Get the nodes ID which have not replied
+     *
+     * @return The address list of the missing nodes
+     */
+    public synchronized List<Integer> getMissingNodesID() {
+        List<Integer> nodesID = new ArrayList<>();
+        for (int nodeID = pendingNodesID.nextSetBit(0); nodeID >= 0; nodeID = pendingNodesID.nextSetBit(nodeID + 1)) {
+            nodesID.add(nodeID);
+        }
+        return nodesID;
+    }
+
+    /**
+     * Build the result from the replies received so far
+     *
+     * @return The formatted string
+     */
+    public synchronized String getResult() {
+        String result = render();
+        if (isTimedOut) {
+            result += "Partial result, no reply before the deadline from the nodes: " + getMissingNodesID() + "\n";
+        }
+        return result;
+    }
+
+    /**
+     * Fold a reply into the query result
+     *
+     * @param reply : The typed reply
+     */
+    protected abstract void aggregate(Reply reply);
+
+    /**
+     * Fold the snapshot of a node into the query result
+     *
+     * @param nodeID       : The node ID
+     * @param maxStaleness : The max age accepted, in milliseconds
+     * @return false if the snapshot of the node is missing or too old
+     */
+    protected abstract boolean loadFromSnapshot(int nodeID, long maxStaleness);
+
+    /**
+     * Render the query result
+     *
+     * @return The formatted string
+     */
+    protected abstract String render();
+}
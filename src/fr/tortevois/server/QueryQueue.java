@@ -0,0 +1,125 @@
+package fr.tortevois.server;
+
+import fr.tortevois.exception.QueryQueueFull;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QueryQueue {
+
+    private final Semaphore inProgress;
+    private final int maxSize;
+    private final long admissionTimeout;
+
+    // Statistics
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final AtomicInteger maxSizeReached = new AtomicInteger(0);
+    private final AtomicLong admittedCount = new AtomicLong(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final AtomicLong totalWaitTime = new AtomicLong(0);
+    private final AtomicLong maxWaitTime = new AtomicLong(0);
+
+    /**
+     * The query queue's constructor
+     *
+     * @param maxInProgress    : The max count of queries in progress at the same time
+     * @param maxSize          : The max count of queries waiting for their admission
+     * @param admissionTimeout : The max waiting time for the admission, in milliseconds
+     */
+    public QueryQueue(int maxInProgress, int maxSize, long admissionTimeout) {
+        this.inProgress = new Semaphore(maxInProgress, true); // FIFO admission
+        this.maxSize = maxSize;
+        this.admissionTimeout = admissionTimeout;
+    }
+
+    /**
+     * Wait for the admission of a new query, in the arrival order
+     *
+     * @return The waiting time, in milliseconds
+     * @throws QueryQueueFull if the queue is full or the admission timeout is reached
+     */
+    public long admit() throws QueryQueueFull {
+        long start = System.currentTimeMillis();
+        try {
+            // The timed form honors the fairness: the untimed tryAcquire() would barge past the waiting queries
+            if (inProgress.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                admitted(0);
+                return 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedCount.incrementAndGet();
+            throw new QueryQueueFull();
+        }
+
+        // Backpressure: reject rather than queueing without limit
+        int waiting = size.incrementAndGet();
+        try {
+            if (waiting > maxSize) {
+                rejectedCount.incrementAndGet();
+                throw new QueryQueueFull();
+            }
+            maxSizeReached.accumulateAndGet(waiting, Math::max);
+
+            try {
+                if (!inProgress.tryAcquire(admissionTimeout, TimeUnit.MILLISECONDS)) {
+                    rejectedCount.incrementAndGet();
+                    throw new QueryQueueFull();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejectedCount.incrementAndGet();
+                throw new QueryQueueFull();
+            }
+        } finally {
+            size.decrementAndGet();
+        }
+
+        long waitTime = System.currentTimeMillis() - start;
+        admitted(waitTime);
+        return waitTime;
+    }
+
+    /**
+     * Release the place of an ended query
+     */
+    public void release() {
+        inProgress.release();
+    }
+
+    /**
+     * Get the count of queries waiting for their admission
+     *
+     * @return The queue size
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    /**
+     * Get the queue statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        long admitted = admittedCount.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Query queue: ").append(getSize()).append(" waiting (max ").append(maxSizeReached.get()).append("/").append(maxSize).append(")");
+        sb.append(", ").append(admitted).append(" admitted, ").append(rejectedCount.get()).append(" rejected");
+        sb.append(", wait time avg ").append(admitted > 0 ? totalWaitTime.get() / admitted : 0).append("ms / max ").append(maxWaitTime.get()).append("ms");
+        return sb.toString();
+    }
+
+    /**
+     * Update the statistics of an admitted query
+     *
+     * @param waitTime : The waiting time, in milliseconds
+     */
+    private void admitted(long waitTime) {
+        admittedCount.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+        maxWaitTime.accumulateAndGet(waitTime, Math::max);
+    }
+}
@@ -0,0 +1,229 @@
+package fr.tortevois.server;
+
+import fr.tortevois.message.MessageType;
+import fr.tortevois.message.NodeSet;
+import fr.tortevois.message.Reply;
+import fr.tortevois.message.StockReply;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static fr.tortevois.gateway.IGateway.REPLY_STATUS_CONNECTED;
+import static fr.tortevois.gateway.IGateway.REPLY_STATUS_NOT_MODIFIED;
+
+public class StockQuery extends Query {
+
+    public final static int NO_QUANTITY = -1;
+
+    private final FleetSnapshot snapshot;
+    private final int[] productsID; // Sorted products ID, index of the stock columns
+    private final String[] productsName;
+    private final int[][] distributorsStock; // By node ID then by product index, null if not received
+    private final int[][] baselines; // The stocks known when the query is sent, by node ID: the base of the delta replies
+    private final long[] baselineVersions; // The stock versions sent, by node ID
+    private int count = 0;
+
+    /**
+     * The stock query's constructor
+     *
+     * @param id               : The query ID
+     * @param nodesID          : The address list of the queried nodes
+     * @param timeout          : The query timeout, in milliseconds
+     * @param addressCount     : The address count of the network
+     * @param productsDatabase : The products name by product ID
+     * @param snapshot         : The fleet snapshot to update
+     */
+    public StockQuery(int id, List<Integer> nodesID, long timeout, int addressCount, Map<Integer, String> productsDatabase, FleetSnapshot snapshot) {
+        super(id, MessageType.REPLY_GET_STOCK, nodesID, timeout);
+        this.snapshot = snapshot;
+        productsID = new int[productsDatabase.size()];
+        productsName = new String[productsDatabase.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> product : productsDatabase.entrySet()) {
+            productsID[i] = product.getKey();
+            productsName[i] = product.getValue();
+            i++;
+        }
+        distributorsStock = new int[addressCount][];
+        baselines = new int[addressCount][];
+        baselineVersions = new long[addressCount];
+    }
+
+    /**
+     * Keep the stocks known of the nodes to query on the network, and their versions:
+     * the distributors reply only the products changed since then, or not modified
+     *
+     * @param nodesID : The address list of the nodes to query on the network
+     */
+    public synchronized void loadBaselines(List<Integer> nodesID) {
+        snapshot.getStockBaselines(nodesID, baselines, baselineVersions);
+    }
+
+    /**
+     * Check if the stock of a node is known when the query is sent: the node is queried with its stock version
+     *
+     * @param nodeID : The node ID
+     * @return false if the node is queried for its full stock
+     */
+    public synchronized boolean hasBaseline(int nodeID) {
+        return baselines[nodeID] != null;
+    }
+
+    /**
+     * Get the stock versions to send with the query to nodes with a baseline
+     * A version too far after the oldest one to be sent as an offset is sent older: still a valid base, for a larger delta
+     *
+     * @param nodes : The queried nodes, all with a baseline
+     * @return The stock version of each node, aligned with the node set
+     */
+    public synchronized long[] getStockVersions(NodeSet nodes) {
+        int[] nodesID = nodes.toArray();
+        long oldestVersion = Long.MAX_VALUE;
+        for (int nodeID : nodesID) {
+            oldestVersion = Math.min(oldestVersion, baselineVersions[nodeID]);
+        }
+        long[] versions = new long[nodesID.length];
+        for (int i = 0; i < nodesID.length; i++) {
+            baselineVersions[nodesID[i]] = Math.min(baselineVersions[nodesID[i]], oldestVersion + Integer.MAX_VALUE);
+            versions[i] = baselineVersions[nodesID[i]];
+        }
+        return versions;
+    }
+
+    /**
+     * Fold a REPLY_GET_STOCK into the node x product matrix
+     *
+     * @param reply : The typed reply
+     */
+    protected void aggregate(Reply reply) {
+        if (!(reply instanceof StockReply)) {
+            return;
+        }
+        StockReply stockReply = (StockReply) reply;
+        int idDistributor = reply.getNodeID();
+        if (idDistributor < 0 || idDistributor >= distributorsStock.length) {
+            return;
+        }
+
+        // The stock didn't change since the version sent: the known stock is still valid
+        if (reply.getStatus() == REPLY_STATUS_NOT_MODIFIED) {
+            int[] baseline = baselines[idDistributor];
+            if (baseline != null) {
+                setStock(idDistributor, baseline);
+                snapshot.updateStock(idDistributor, baseline, reply.getSequence(), stockReply.getStockVersion());
+            }
+            return;
+        }
+
+        if (reply.getStatus() == REPLY_STATUS_CONNECTED) {
+            int[] stock;
+            if (!stockReply.isDelta()) {
+                stock = new int[productsID.length];
+                Arrays.fill(stock, NO_QUANTITY);
+            } else if (baselines[idDistributor] != null && stockReply.getBaseVersion() == baselineVersions[idDistributor]) {
+                stock = Arrays.copyOf(baselines[idDistributor], productsID.length); // The rows are shared with the snapshot
+            } else {
+                return; // A delta without its base
+            }
+            int[] ids = stockReply.getIds();
+            int[] quantities = stockReply.getQuantities();
+            if (ids != null && quantities != null) {
+                if (ids.length == quantities.length) {
+                    for (int i = 0; i < ids.length; i++) {
+                        int index = Arrays.binarySearch(productsID, ids[i]);
+                        if (index >= 0) {
+                            stock[index] = quantities[i];
+                        }
+                    }
+                } else {
+                    // Size Error
+                }
+            } else {
+                // Null Error
+            }
+
+            setStock(idDistributor, stock);
+            snapshot.updateStock(idDistributor, stock, reply.getSequence(), stockReply.getStockVersion());
+        }
+    }
+
+    /**
+     * Fold the stock snapshot of a node into the node x product matrix
+     *
+     * @param nodeID       : The node ID
+     * @param maxStaleness : The max age accepted, in milliseconds
+     * @return false if the snapshot of the node is missing or too old
+     */
+    protected boolean loadFromSnapshot(int nodeID, long maxStaleness) {
+        int[] stock = snapshot.getStock(nodeID, maxStaleness);
+        if (stock == null) {
+            return false;
+        }
+        setStock(nodeID, stock);
+        return true;
+    }
+
+    /**
+     * Set the stock of a distributor
+     *
+     * @param idDistributor : The distributor node ID
+     * @param stock         : The quantities by product index
+     */
+    private void setStock(int idDistributor, int[] stock) {
+        if (distributorsStock[idDistributor] == null) {
+            count++;
+        }
+        distributorsStock[idDistributor] = stock;
+    }
+
+    /**
+     * Render the REPLY_GET_STOCK result
+     *
+     * @return The formatted string
+     */
+    protected String render() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\nResult of querying to get the Distributors stocks:\n");
+        if (count > 0) {
+            // Build the Array Header
+            sb.append(String.format("%-18s", "")).append("|");
+            for (String productName : productsName) {
+                sb.append(" ").append(productName).append(" ").append("|");
+            }
+            sb.append("\n");
+
+            // Build the Array Body
+            for (int idDistributor = 0; idDistributor < distributorsStock.length; idDistributor++) {
+                int[] stock = distributorsStock[idDistributor];
+                if (stock == null) {
+                    continue;
+                }
+                sb.append(String.format("%-18s", " Distributor #" + idDistributor)).append("|");
+                for (int i = 0; i < productsID.length; i++) {
+                    int len = (productsName[i].length() + 2);
+                    if (stock[i] != NO_QUANTITY) {
+                        sb.append(printQuantity(Integer.toString(stock[i]), len)).append("|");
+                    } else {
+                        sb.append(printQuantity("-", len)).append("|");
+                    }
+                }
+                sb.append("\n");
+            }
+        } else {
+            sb.append("Unable to get the distributors stocks\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Tools to print the quantity columns
+     *
+     * @param str : The quantity to print
+     * @param len : The label length
+     * @return The formatted string
+     */
+    private String printQuantity(String str, int len) {
+        return String.format("%" + (len - 2) + "s  ", str);
+    }
+}
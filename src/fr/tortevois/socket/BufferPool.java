@@ -0,0 +1,69 @@
+package fr.tortevois.socket;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxSize;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(0); // The count of the buffers waiting in the pool
+
+    // Statistics
+    private final AtomicLong allocatedCount = new AtomicLong(0);
+
+    /**
+     * The buffer pool's constructor
+     *
+     * @param bufferSize : The capacity of each direct buffer, in bytes
+     * @param maxSize    : The max count of the buffers kept in the pool
+     */
+    public BufferPool(int bufferSize, int maxSize) {
+        this.bufferSize = bufferSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Take a cleared buffer from the pool, or allocate a new one if the pool is empty
+     *
+     * @return The direct buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            allocatedCount.incrementAndGet();
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        size.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Give a buffer back to the pool, it is left to the GC if the pool is full
+     *
+     * @param buffer : The buffer, not used anymore by the caller
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize) {
+            return;
+        }
+        if (size.incrementAndGet() <= maxSize) {
+            buffers.offer(buffer);
+        } else {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Get the pool statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        return "Buffer pool: " + size.get() + "/" + maxSize + " buffers of " + bufferSize + " bytes, " + allocatedCount.get() + " allocated";
+    }
+}
@@ -0,0 +1,23 @@
+package fr.tortevois.socket;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+interface DatagramHandler {
+
+    /**
+     * Get the non-blocking channel read by the receive engine
+     *
+     * @return The datagram channel
+     */
+    DatagramChannel getChannel();
+
+    /**
+     * Handle a received datagram, on the receive engine thread
+     *
+     * @param datagram : The datagram, flipped, only valid during the call
+     * @param source   : The socket address of the sender
+     */
+    void onDatagram(ByteBuffer datagram, SocketAddress source);
+}
@@ -0,0 +1,136 @@
+package fr.tortevois.socket;
+
+import fr.tortevois.utils.SharedTimer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class FrameBatcher {
+
+    // The frames are JSON strings, which never hold a raw line feed: it separates the frames of a datagram
+    public final static char FRAME_SEPARATOR = '\n';
+
+    private final Consumer<ByteBuffer> sender;
+    private final int maxSize;
+    private final long window;
+    private final boolean isBinary;
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+
+    // Statistics
+    private final AtomicLong framesCount = new AtomicLong(0);
+    private final AtomicLong datagramsCount = new AtomicLong(0);
+
+    /**
+     * The frame batcher's constructor
+     *
+     * @param sender   : The callback sending a datagram, without blocking: the window ends on the shared timer
+     * @param maxSize  : The max size of a datagram, in bytes
+     * @param window   : The max time a frame waits in a batch, in microseconds
+     * @param isBinary : true for the self-delimited binary frames, put one after the other without separator
+     */
+    public FrameBatcher(Consumer<ByteBuffer> sender, int maxSize, long window, boolean isBinary) {
+        this.sender = sender;
+        this.maxSize = maxSize;
+        this.window = window;
+        this.isBinary = isBinary;
+    }
+
+    /**
+     * Split a received datagram into its frames
+     *
+     * @param msg : The received datagram, one or several frames
+     * @return The frames
+     */
+    public static String[] unpack(String msg) {
+        if (msg.indexOf(FRAME_SEPARATOR) < 0) {
+            return new String[]{msg};
+        }
+        return msg.split(String.valueOf(FRAME_SEPARATOR));
+    }
+
+    /**
+     * Add a JSON frame to the current batch, sent when the next frame doesn't fit in or at the end of the window
+     *
+     * @param frame : The JSON string frame
+     */
+    public void add(String frame) {
+        add(frame.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Add an encoded frame to the current batch, sent when the next frame doesn't fit in or at the end of the window
+     *
+     * @param frame : The UTF-8 encoded JSON frame, or the binary frame for a binary batcher
+     */
+    public void add(byte[] frame) {
+        int separatorSize = isBinary ? 0 : 1;
+        ByteBuffer fullBatch = null;
+        synchronized (this) {
+            if (batch.size() > 0 && batch.size() + separatorSize + frame.length > maxSize) {
+                fullBatch = takeBatch();
+            }
+            if (batch.size() > 0) {
+                if (!isBinary) {
+                    batch.write(FRAME_SEPARATOR);
+                }
+            } else {
+                // First frame of the batch: open the window
+                SharedTimer.getInstance().schedule(this::flush, window, TimeUnit.MICROSECONDS);
+            }
+            batch.write(frame, 0, frame.length);
+        }
+        framesCount.incrementAndGet();
+
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+    }
+
+    /**
+     * Send the current batch
+     */
+    public void flush() {
+        ByteBuffer currentBatch;
+        synchronized (this) {
+            if (batch.size() == 0) {
+                return;
+            }
+            currentBatch = takeBatch();
+        }
+        send(currentBatch);
+    }
+
+    /**
+     * Get the batcher statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        return "Frame batcher: " + framesCount.get() + " frames in " + datagramsCount.get() + " datagrams";
+    }
+
+    /**
+     * Take the current batch and start a new one, under the lock of the batcher
+     *
+     * @return The batch datagram
+     */
+    private ByteBuffer takeBatch() {
+        ByteBuffer datagram = ByteBuffer.wrap(batch.toByteArray());
+        batch.reset();
+        return datagram;
+    }
+
+    /**
+     * Send a batch datagram
+     *
+     * @param datagram : The JSON frames separated by FRAME_SEPARATOR, or the binary frames
+     */
+    private void send(ByteBuffer datagram) {
+        datagramsCount.incrementAndGet();
+        sender.accept(datagram);
+    }
+}
@@ -1,70 +1,280 @@
 package fr.tortevois.socket;
 
+import fr.tortevois.codec.BinaryCodec;
 import fr.tortevois.distributor.Distributor;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static fr.tortevois.gateway.IGateway.BUFFER_MAX_SIZE;
-import static fr.tortevois.utils.Utils.OUT;
-import static fr.tortevois.utils.Utils.printTrace;
+import static fr.tortevois.gateway.IGateway.RECEIVE_BUFFER_SIZE;
+import static fr.tortevois.utils.Utils.*;
 
-public class ListeningSocket implements Runnable {
+public class ListeningSocket implements DatagramHandler {
 
     private final static boolean DEBUG = false;
-    private final Distributor distributor;
-    private DatagramSocket socket = null;
-    private boolean isRunning = true;
+    private final Distributor distributor; // null for a socket shared by the nodes of a multiplexed host
+    private final Map<Integer, Distributor> nodes = new ConcurrentHashMap<>(); // The nodes of a multiplexed host by node ID
+    private final int port;
+    private final ReceiveEngine engine = ReceiveEngine.getInstance();
+    private final ReliableReceiver reliableReceiver = new ReliableReceiver();
+    private final Reassembler reassembler = new Reassembler(); // Only used on the engine thread
+    private final ByteBuffer ackBuffer = ByteBuffer.allocate(ReliableReceiver.ACK_MAX_SIZE); // Only used on the engine thread
+    private DatagramChannel channel = null;
+    private int receiveBufferSize = 0;
+
+    // Statistics
+    private final AtomicLong processedCount = new AtomicLong(0);
+    private final AtomicLong oversizedCount = new AtomicLong(0);
+    private final AtomicLong malformedCount = new AtomicLong(0);
+    private final AtomicLong overflowCount = new AtomicLong(0);
+    private final AtomicLong duplicateCount = new AtomicLong(0);
+    private final AtomicLong unknownNodeCount = new AtomicLong(0);
 
     /**
-     * ListeningSocket's constructor : open a DatagramSocket
+     * ListeningSocket's constructor for a multiplexed host : the nodes registered later share the socket
+     * @param port : Listening port to open
+     */
+    public ListeningSocket(int port) {
+        this(null, port);
+    }
+
+    /**
+     * ListeningSocket's constructor : open a non-blocking DatagramChannel, serviced by the shared receive engine
      * @param distributor : Distributor socket owner
      * @param port : Listening port to open
      */
     public ListeningSocket(Distributor distributor, int port) {
         this.distributor = distributor;
+        this.port = port;
         try {
-            socket = new DatagramSocket(port);
-        } catch (SocketException e) {
+            channel = DatagramChannel.open();
+            // Ask for a larger kernel buffer to absorb the bursts of replies, the OS may grant less
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+            receiveBufferSize = channel.getOption(StandardSocketOptions.SO_RCVBUF);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+        } catch (IOException e) {
             System.err.println("Unable to create the socket");
             e.printStackTrace();
             System.exit(-1);
         }
-        printTrace(DEBUG, OUT, "UDP Socket Server is now available on port: " + port);
+        engine.register(this);
+        printTrace(DEBUG, OUT, "UDP Socket Server is now available on port: " + port + " (receive buffer " + receiveBufferSize + " bytes)");
+    }
+
+    /**
+     * Get the channel, for its registration in the receive engine
+     *
+     * @return The datagram channel
+     */
+    public DatagramChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Register a node of the multiplexed host: the datagrams with its node header are dispatched to it
+     *
+     * @param nodeID      : The node ID
+     * @param distributor : The distributor of the node
+     * @return false if the node ID is already registered
+     */
+    public boolean register(int nodeID, Distributor distributor) {
+        return nodes.putIfAbsent(nodeID, distributor) == null;
+    }
+
+    /**
+     * Unregister a node of the multiplexed host
+     *
+     * @param nodeID : The node ID
+     */
+    public void unregister(int nodeID) {
+        nodes.remove(nodeID);
     }
 
     /**
-     * Blocking reading loop
+     * Handle a received datagram: ack it if it is reliable and the workers can take it, drop the duplicates, find its node,
+     * reassemble the fragments, then decode and dispatch its JSON or binary frames
+     *
+     * @param datagram : The datagram, flipped, only valid during the call
+     * @param source   : The socket address of the sender
      */
-    public void run() {
-        do {
-            // Create the buffer for the message
-            byte[] buffer = new byte[BUFFER_MAX_SIZE];
-            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-
-            // Read message from client
-            try {
-                socket.receive(packet); // receive is blocking
-                // InetAddress address = packet.getAddress();
-                // int port = packet.getPort();
-                String msg = new String(packet.getData(), 0, packet.getLength());
-                // printTrace(DEBUG, LEVEL_OUT, "ServerSocket.Read [from: " + address + ":" + port + "] msg:" + msg);
-                printTrace(DEBUG, OUT, "ServerSocket.Read:" + msg);
-                // Call the distributor to process the received message
-                distributor.messageProcessing(msg);
-            } catch (IOException e) {
-                System.err.println("IOException: " + e.getMessage());
+    public void onDatagram(ByteBuffer datagram, SocketAddress source) {
+        if (datagram.remaining() > BUFFER_MAX_SIZE) {
+            oversizedCount.incrementAndGet();
+            printTrace(DEBUG, ERR, "ListeningSocket: datagram larger than " + BUFFER_MAX_SIZE + " bytes, drop it");
+            return;
+        }
+
+        boolean isReliable = false;
+        if (datagram.hasRemaining() && datagram.get(datagram.position()) == ReliableReceiver.RELIABLE_TAG) {
+            long sequence = ReliableReceiver.readHeader(datagram);
+            if (sequence < 1) {
+                malformedCount.incrementAndGet();
+                return;
+            }
+            // Neither accepted nor acked while the workers' queue is full: the sender retransmits it later
+            if (!engine.hasCapacity()) {
+                overflowCount.incrementAndGet();
+                return;
             }
-        } while (isRunning);
+            isReliable = true;
+            boolean isNew = reliableReceiver.accept(source, sequence);
+            // Ack even the duplicates: the previous ack may be lost
+            sendAck(source);
+            if (!isNew) {
+                duplicateCount.incrementAndGet();
+                return;
+            }
+        }
+
+        if (datagram.hasRemaining() && datagram.get(datagram.position()) == ReliableReceiver.SKIP_TAG) {
+            long sequence = ReliableReceiver.readHeader(datagram);
+            if (sequence < 1) {
+                malformedCount.incrementAndGet();
+                return;
+            }
+            reliableReceiver.skip(source, sequence);
+            sendAck(source);
+            return;
+        }
+
+        Distributor target = distributor;
+        if (datagram.hasRemaining() && datagram.get(datagram.position()) == NodeAddress.NODE_TAG) {
+            long nodeID = ReliableReceiver.readHeader(datagram);
+            target = (nodeID < 0) ? null : nodes.get((int) nodeID);
+        }
+        if (target == null) {
+            unknownNodeCount.incrementAndGet();
+            printTrace(DEBUG, ERR, "ListeningSocket: no node for the datagram on port " + port + ", drop it");
+            return;
+        }
+
+        if (datagram.hasRemaining() && datagram.get(datagram.position()) == Reassembler.FRAGMENT_TAG) {
+            datagram = reassembler.add(datagram, source);
+            if (datagram == null) {
+                return; // Wait for the next fragments
+            }
+        }
+
+        if (BinaryCodec.isBinary(datagram)) {
+            // The binary frames of a batch follow each other: only delimited here, the workers decode them
+            while (datagram.hasRemaining()) {
+                int length = BinaryCodec.getFrameLength(datagram);
+                if (length < 0) {
+                    malformedCount.incrementAndGet();
+                    return;
+                }
+                byte[] frame = new byte[length];
+                datagram.get(frame);
+                engine.dispatch(this, target, frame, isReliable);
+            }
+            return;
+        }
+
+        String msg = engine.decode(datagram);
+        if (msg == null) {
+            malformedCount.incrementAndGet();
+            return;
+        }
+        engine.dispatch(this, target, msg, isReliable);
+    }
+
+    /**
+     * Send its ack to the sender of a reliable datagram
+     *
+     * @param source : The socket address of the sender
+     */
+    private void sendAck(SocketAddress source) {
+        ackBuffer.clear();
+        reliableReceiver.writeAck(source, ackBuffer);
+        try {
+            channel.send(ackBuffer, source);
+        } catch (IOException e) {
+            printTrace(DEBUG, ERR, "Unable to send the ack: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the kernel receive buffer size granted to the socket
+     *
+     * @return The size in bytes
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Deliver a received message to the distributor, called by a worker of the message dispatcher
+     *
+     * @param distributor : The distributor of the node
+     * @param msg         : The decoded message
+     */
+    void deliver(Distributor distributor, String msg) {
+        processedCount.incrementAndGet();
+        printTrace(DEBUG, OUT, "ServerSocket.Read:" + msg);
+        try {
+            // Call the distributor to process the received message
+            distributor.messageProcessing(msg);
+        } catch (RuntimeException e) {
+            // Don't let a bad message kill the worker shared with the other sockets
+            System.err.println("Unable to process the message: " + e);
+        }
+    }
+
+    /**
+     * Deliver a received binary frame to the distributor, called by a worker of the message dispatcher
+     *
+     * @param distributor : The distributor of the node
+     * @param frame       : The binary frame
+     */
+    void deliver(Distributor distributor, byte[] frame) {
+        processedCount.incrementAndGet();
+        try {
+            distributor.messageProcessing(frame);
+        } catch (RuntimeException e) {
+            System.err.println("Unable to process the message: " + e);
+        }
+    }
+
+    /**
+     * Count a message dropped because the processing queue is full
+     */
+    void countOverflow() {
+        overflowCount.incrementAndGet();
+    }
+
+    /**
+     * Get the socket statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        String statistics = "Socket " + port + ": ";
+        if (distributor == null) {
+            statistics += nodes.size() + " nodes, " + unknownNodeCount.get() + " for an unknown node dropped, ";
+        }
+        return statistics + processedCount.get() + " processed, " + oversizedCount.get() + " oversized, " + malformedCount.get() + " malformed, "
+                + duplicateCount.get() + " duplicate and " + overflowCount.get() + " overflowing dropped (the reliable ones retransmitted), receive buffer " + receiveBufferSize + " bytes\n"
+                + reassembler.getStatistics();
     }
 
     /**
      * Close the socket
      */
     public void close() {
-        isRunning = false;
-        socket.close();
+        printTrace(DEBUG, OUT, getStatistics());
+        try {
+            channel.close(); // Also cancels its registration in the receive engine
+        } catch (IOException e) {
+            System.err.println("Unable to close the socket: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,91 @@
+package fr.tortevois.socket;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MessageDispatcher {
+
+    private final int workersCount;
+    private final int queueMaxSize;
+    private final ThreadPoolExecutor executor;
+
+    // Statistics
+    private final AtomicLong dispatchedCount = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final AtomicLong waitedCount = new AtomicLong(0);
+    private final AtomicInteger maxQueueDepth = new AtomicInteger(0);
+
+    /**
+     * The message dispatcher's constructor
+     *
+     * @param workersCount : The count of the worker threads processing the messages
+     * @param queueMaxSize : The max count of the messages waiting for a worker, the next unreliable ones are dropped
+     */
+    public MessageDispatcher(int workersCount, int queueMaxSize) {
+        this.workersCount = workersCount;
+        this.queueMaxSize = queueMaxSize;
+        AtomicInteger threadsCount = new AtomicInteger(0);
+        executor = new ThreadPoolExecutor(workersCount, workersCount, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueMaxSize), runnable -> {
+            Thread thread = new Thread(runnable, "MessageWorker-" + threadsCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Check if a worker or a place in the queue is free, only on the receive engine thread (the only one to queue messages)
+     *
+     * @return The boolean status
+     */
+    public boolean hasCapacity() {
+        return executor.getQueue().remainingCapacity() > 0;
+    }
+
+    /**
+     * Hand a received message over to the workers, without waiting for its processing
+     *
+     * @param socket     : The listening socket which received the message
+     * @param delivery   : The delivery of the decoded message to its distributor
+     * @param isReliable : true if the message is already acked to its sender: it can't be dropped, it waits for a place
+     */
+    public void dispatch(ListeningSocket socket, Runnable delivery, boolean isReliable) {
+        try {
+            executor.execute(delivery);
+        } catch (RejectedExecutionException e) {
+            if (!isReliable) {
+                // All the workers are busy and the queue is full: better drop now than block the reception
+                droppedCount.incrementAndGet();
+                socket.countOverflow();
+                return;
+            }
+            // The sender won't retransmit it: block the reception until a worker frees a place (the core workers take from the queue)
+            try {
+                executor.getQueue().put(delivery);
+                waitedCount.incrementAndGet();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                droppedCount.incrementAndGet();
+                socket.countOverflow();
+                return;
+            }
+        }
+        dispatchedCount.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+    }
+
+    /**
+     * Get the dispatcher statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        return "Message dispatcher: " + workersCount + " workers (" + executor.getActiveCount() + " busy), queue "
+                + executor.getQueue().size() + "/" + queueMaxSize + " (max " + maxQueueDepth.get() + "), "
+                + dispatchedCount.get() + " dispatched (" + waitedCount.get() + " reliable waited for a place), " + droppedCount.get() + " dropped";
+    }
+}
@@ -0,0 +1,81 @@
+package fr.tortevois.socket;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import static fr.tortevois.distributor.Distributor.INITIAL_SOCKET_PORT;
+
+public class NodeAddress extends SocketAddress {
+
+    // Datagram header "N<node ID>|" before the payload: the receiving host dispatches the datagram to the node
+    public final static byte NODE_TAG = 'N';
+    // The node listens on its own port, INITIAL_SOCKET_PORT + its node ID
+    public final static int NO_HOST_PORT = -1;
+
+    private final InetSocketAddress hostAddress;
+    private final int nodeID;
+
+    /**
+     * The node address's constructor
+     *
+     * @param hostAddress : The socket address shared by the nodes of the host
+     * @param nodeID      : The node ID
+     */
+    public NodeAddress(InetSocketAddress hostAddress, int nodeID) {
+        this.hostAddress = hostAddress;
+        this.nodeID = nodeID;
+    }
+
+    /**
+     * Get the socket address of a node
+     *
+     * @param host     : The address of the host of the node
+     * @param hostPort : The port shared by the nodes of the host, or NO_HOST_PORT
+     * @param nodeID   : The node ID
+     * @return The node address on a multiplexed host, the address of its own port otherwise
+     */
+    public static SocketAddress of(InetAddress host, int hostPort, int nodeID) {
+        if (hostPort == NO_HOST_PORT) {
+            return new InetSocketAddress(host, INITIAL_SOCKET_PORT + nodeID);
+        }
+        return new NodeAddress(new InetSocketAddress(host, hostPort), nodeID);
+    }
+
+    /**
+     * Get the socket address shared by the nodes of the host
+     *
+     * @return The host socket address
+     */
+    public InetSocketAddress getHostAddress() {
+        return hostAddress;
+    }
+
+    /**
+     * Get the node ID
+     *
+     * @return The node ID
+     */
+    public int getNodeID() {
+        return nodeID;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof NodeAddress)) {
+            return false;
+        }
+        NodeAddress address = (NodeAddress) o;
+        return nodeID == address.nodeID && hostAddress.equals(address.hostAddress);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * hostAddress.hashCode() + nodeID;
+    }
+
+    @Override
+    public String toString() {
+        return hostAddress + "/" + nodeID;
+    }
+}
@@ -0,0 +1,138 @@
+package fr.tortevois.socket;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fr.tortevois.gateway.IGateway.*;
+
+public class Reassembler {
+
+    // Fragment header: "F<message ID>.<index>.<count>|<fragment payload>"
+    public final static byte FRAGMENT_TAG = 'F';
+    public final static byte FIELD_SEPARATOR = '.';
+
+    // The incomplete messages by sender and message ID, the oldest first
+    private final Map<String, Message> messages = new LinkedHashMap<>();
+
+    // Statistics
+    private final AtomicLong reassembledCount = new AtomicLong(0);
+    private final AtomicLong expiredCount = new AtomicLong(0);
+
+    /**
+     * A message waiting for its fragments
+     */
+    private static class Message {
+        private final byte[][] fragments;
+        private final long startTime;
+        private int receivedCount = 0;
+        private int size = 0;
+
+        private Message(int count, long now) {
+            this.fragments = new byte[count][];
+            this.startTime = now;
+        }
+    }
+
+    /**
+     * Add a fragment, only on the receive engine thread
+     *
+     * @param datagram : The datagram, from the fragment header to the end of its payload
+     * @param source   : The socket address of the sender
+     * @return The reassembled message when the fragment is its last missing one, else null (also if the header is malformed)
+     */
+    public ByteBuffer add(ByteBuffer datagram, SocketAddress source) {
+        datagram.get(); // The tag
+        long messageID = readField(datagram, FIELD_SEPARATOR);
+        long index = readField(datagram, FIELD_SEPARATOR);
+        long count = readField(datagram, ReliableReceiver.HEADER_END);
+        if (messageID < 0 || count < 1 || count > FRAGMENTS_MAX_COUNT || index < 0 || index >= count) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        removeExpired(now);
+        String key = source + "#" + messageID;
+        Message message = messages.get(key);
+        if (message == null) {
+            if (messages.size() >= REASSEMBLY_TABLE_MAX_SIZE) {
+                // Give up the oldest incomplete message
+                Iterator<Message> iterator = messages.values().iterator();
+                iterator.next();
+                iterator.remove();
+                expiredCount.incrementAndGet();
+            }
+            message = new Message((int) count, now);
+            messages.put(key, message);
+        }
+        if (message.fragments.length != count || message.fragments[(int) index] != null) {
+            return null; // Inconsistent or duplicate fragment
+        }
+
+        byte[] fragment = new byte[datagram.remaining()];
+        datagram.get(fragment);
+        message.fragments[(int) index] = fragment;
+        message.size += fragment.length;
+        if (++message.receivedCount < count) {
+            return null;
+        }
+
+        messages.remove(key);
+        reassembledCount.incrementAndGet();
+        ByteBuffer reassembled = ByteBuffer.allocate(message.size);
+        for (byte[] bytes : message.fragments) {
+            reassembled.put(bytes);
+        }
+        reassembled.flip();
+        return reassembled;
+    }
+
+    /**
+     * Get the reassembler statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        return "Reassembly: " + messages.size() + "/" + REASSEMBLY_TABLE_MAX_SIZE + " incomplete, " + reassembledCount.get() + " reassembled, "
+                + expiredCount.get() + " given up";
+    }
+
+    /**
+     * Give up the incomplete messages older than REASSEMBLY_TIMEOUT
+     *
+     * @param now : The current time
+     */
+    private void removeExpired(long now) {
+        Iterator<Message> iterator = messages.values().iterator();
+        while (iterator.hasNext() && now - iterator.next().startTime > REASSEMBLY_TIMEOUT) {
+            iterator.remove();
+            expiredCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Read a decimal field of the header
+     *
+     * @param datagram : The datagram, at the field position
+     * @param end      : The byte ending the field
+     * @return The field value, or -1 if it is malformed
+     */
+    private static long readField(ByteBuffer datagram, byte end) {
+        long value = 0;
+        int digits = 0;
+        while (datagram.hasRemaining()) {
+            byte b = datagram.get();
+            if (b == end) {
+                return (digits > 0) ? value : -1;
+            }
+            if (b < '0' || b > '9' || ++digits > 18) {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return -1;
+    }
+}
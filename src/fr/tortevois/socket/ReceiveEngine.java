@@ -0,0 +1,213 @@
+package fr.tortevois.socket;
+
+import fr.tortevois.distributor.Distributor;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static fr.tortevois.gateway.IGateway.BUFFER_MAX_SIZE;
+import static fr.tortevois.gateway.IGateway.BUFFER_POOL_MAX_SIZE;
+import static fr.tortevois.gateway.IGateway.PROCESSING_QUEUE_MAX_SIZE;
+import static fr.tortevois.gateway.IGateway.PROCESSING_WORKERS;
+import static fr.tortevois.utils.Utils.ERR;
+import static fr.tortevois.utils.Utils.printTrace;
+
+public class ReceiveEngine implements Runnable {
+
+    private final static boolean DEBUG = false;
+
+    // One more byte than the max datagram size, to detect the truncated datagrams
+    private final static int RECEIVE_BUFFER_CAPACITY = BUFFER_MAX_SIZE + 1;
+    // Datagrams read on a channel before to serve the next ready one: the acks aren't delayed by a burst on another channel
+    private final static int DRAIN_MAX_DATAGRAMS = 64;
+
+    private final Selector selector;
+    private final Queue<DatagramHandler> pendingHandlers = new ConcurrentLinkedQueue<>();
+    private final BufferPool bufferPool = new BufferPool(RECEIVE_BUFFER_CAPACITY, BUFFER_POOL_MAX_SIZE);
+    private final MessageDispatcher dispatcher = new MessageDispatcher(PROCESSING_WORKERS, PROCESSING_QUEUE_MAX_SIZE);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final CharBuffer chars = CharBuffer.allocate(RECEIVE_BUFFER_CAPACITY); // An UTF-8 byte never decodes to more than one char
+
+    // -- Singleton -------------------------------------------------------------------------------------------------------------
+
+    private static ReceiveEngine instance = null;
+
+    private ReceiveEngine() throws IOException {
+        selector = Selector.open();
+        Thread thread = new Thread(this, "ReceiveEngine");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the receive engine shared by all the listening sockets of the process, started on the first call
+     *
+     * @return The receive engine
+     */
+    public static synchronized ReceiveEngine getInstance() {
+        if (instance == null) {
+            try {
+                instance = new ReceiveEngine();
+            } catch (IOException e) {
+                System.err.println("Unable to open the selector of the receive engine");
+                e.printStackTrace();
+                System.exit(-1);
+            }
+        }
+        return instance;
+    }
+
+    // --------------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Register a socket, its channel is serviced by the engine thread from now on
+     *
+     * @param handler : The socket, with a non-blocking channel
+     */
+    void register(DatagramHandler handler) {
+        pendingHandlers.add(handler);
+        selector.wakeup();
+    }
+
+    /**
+     * Check if the workers can take a new message: a reliable datagram is not acked before
+     *
+     * @return The boolean status
+     */
+    boolean hasCapacity() {
+        return dispatcher.hasCapacity();
+    }
+
+    /**
+     * Hand the frames of a received message over to the workers
+     *
+     * @param socket      : The listening socket which received the message
+     * @param distributor : The distributor of the node
+     * @param msg         : The decoded message
+     * @param isReliable  : true if the message is acked to its sender, never dropped
+     */
+    void dispatch(ListeningSocket socket, Distributor distributor, String msg, boolean isReliable) {
+        // A datagram from a batching gateway holds several frames
+        for (String frame : FrameBatcher.unpack(msg)) {
+            dispatcher.dispatch(socket, () -> socket.deliver(distributor, frame), isReliable);
+        }
+    }
+
+    /**
+     * Hand a received binary frame over to the workers
+     *
+     * @param socket      : The listening socket which received the frame
+     * @param distributor : The distributor of the node
+     * @param frame       : The binary frame
+     * @param isReliable  : true if the frame is acked to its sender, never dropped
+     */
+    void dispatch(ListeningSocket socket, Distributor distributor, byte[] frame, boolean isReliable) {
+        dispatcher.dispatch(socket, () -> socket.deliver(distributor, frame), isReliable);
+    }
+
+    /**
+     * Get the engine statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        return "Receive engine: " + selector.keys().size() + " sockets, " + bufferPool.getStatistics() + "\n" + dispatcher.getStatistics();
+    }
+
+    /**
+     * Selecting loop: read all the datagrams ready on the registered channels
+     */
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.err.println("ReceiveEngine.select IOException: " + e.getMessage());
+                continue;
+            }
+            registerPendingHandlers();
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                if (key.isValid() && key.isReadable()) {
+                    drain((DatagramChannel) key.channel(), (DatagramHandler) key.attachment());
+                }
+            }
+        }
+    }
+
+    /**
+     * Register the sockets added since the last select (the registration must be done by the engine thread)
+     */
+    private void registerPendingHandlers() {
+        DatagramHandler handler;
+        while ((handler = pendingHandlers.poll()) != null) {
+            try {
+                handler.getChannel().register(selector, SelectionKey.OP_READ, handler);
+            } catch (ClosedChannelException e) {
+                printTrace(DEBUG, ERR, "ReceiveEngine: the socket is closed before its registration");
+            }
+        }
+    }
+
+    /**
+     * Read the datagrams waiting on a channel, up to DRAIN_MAX_DATAGRAMS, and hand them over to the socket
+     * (the channel is selected again by the next select if datagrams are left)
+     *
+     * @param channel : The non-blocking channel
+     * @param handler : The socket of the channel
+     */
+    private void drain(DatagramChannel channel, DatagramHandler handler) {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            SocketAddress source;
+            for (int i = 0; i < DRAIN_MAX_DATAGRAMS && (source = channel.receive(buffer)) != null; i++) {
+                buffer.flip();
+                handler.onDatagram(buffer, source);
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            printTrace(DEBUG, ERR, "ReceiveEngine.receive IOException: " + e.getMessage());
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Decode a datagram straight from the direct buffer, on the engine thread
+     *
+     * @param buffer : The datagram or the reassembled message, from its position to its limit
+     * @return The message, or null if the datagram is not a valid UTF-8 string
+     */
+    String decode(ByteBuffer buffer) {
+        // Only a reassembled message doesn't fit in the reused chars
+        CharBuffer chars = (buffer.remaining() <= this.chars.capacity()) ? this.chars : CharBuffer.allocate(buffer.remaining());
+        decoder.reset();
+        chars.clear();
+        CoderResult result = decoder.decode(buffer, chars, true);
+        if (result.isError()) {
+            printTrace(DEBUG, ERR, "ReceiveEngine: malformed UTF-8 datagram, drop it");
+            return null;
+        }
+        decoder.flush(chars);
+        chars.flip();
+        return chars.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package fr.tortevois.socket;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static fr.tortevois.gateway.IGateway.RELIABLE_PEERS_MAX_SIZE;
+import static fr.tortevois.gateway.IGateway.RELIABLE_WINDOW_MAX_SIZE;
+
+public class ReliableReceiver {
+
+    // Datagram headers: "R<sequence>|<payload>" for a reliable datagram, "A<cumulative>|<selective bitmap>" for its ack
+    // (the hexadecimal words of the bitmap separated by WORD_SEPARATOR, the whole receive window is acked),
+    // "S<sequence>|" when the sender no more retransmits any sequence up to it: the cumulative ack skips the given up ones
+    public final static byte RELIABLE_TAG = 'R';
+    public final static byte ACK_TAG = 'A';
+    public final static byte SKIP_TAG = 'S';
+    public final static byte HEADER_END = '|';
+    public final static byte WORD_SEPARATOR = ',';
+    public final static int SELECTIVE_ACK_SIZE = RELIABLE_WINDOW_MAX_SIZE;
+    public final static int ACK_MAX_SIZE = 32 + (SELECTIVE_ACK_SIZE / Long.SIZE) * 17; // The header, then the words and their separators
+
+    // The receive windows by peer, the least recently used is forgotten first
+    private final Map<SocketAddress, Window> windows = new LinkedHashMap<SocketAddress, Window>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SocketAddress, Window> eldest) {
+            return size() > RELIABLE_PEERS_MAX_SIZE;
+        }
+    };
+
+    /**
+     * The receive window of a peer
+     */
+    private static class Window {
+        private long cumulative = 0; // All the sequences up to it are received (the first sequence is 1)
+        private BitSet received = new BitSet(); // The bit i is set if the sequence cumulative + 1 + i is received
+    }
+
+    /**
+     * Read the header of a reliable datagram, the position is moved to the payload
+     *
+     * @param datagram : The datagram, starting with RELIABLE_TAG, ACK_TAG or NodeAddress.NODE_TAG
+     * @return The sequence (or the cumulative ack, or the node ID), or -1 if the header is malformed
+     */
+    public static long readHeader(ByteBuffer datagram) {
+        datagram.get(); // The tag
+        long value = 0;
+        while (datagram.hasRemaining()) {
+            byte b = datagram.get();
+            if (b == HEADER_END) {
+                return value;
+            }
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return -1;
+    }
+
+    /**
+     * Register a reliable datagram received from a peer
+     *
+     * @param source   : The socket address of the peer
+     * @param sequence : The datagram sequence
+     * @return false if the datagram is a duplicate
+     */
+    public synchronized boolean accept(SocketAddress source, long sequence) {
+        Window window = windows.computeIfAbsent(source, peer -> new Window());
+        if (sequence <= window.cumulative) {
+            return false;
+        }
+        if (sequence > window.cumulative + RELIABLE_WINDOW_MAX_SIZE) {
+            // The sender gave up the oldest sequences: slide the window
+            int shift = (int) (sequence - RELIABLE_WINDOW_MAX_SIZE - window.cumulative);
+            window.received = window.received.get(shift, Math.max(shift, window.received.length()));
+            window.cumulative += shift;
+        }
+        int bit = (int) (sequence - window.cumulative - 1);
+        if (window.received.get(bit)) {
+            return false;
+        }
+        window.received.set(bit);
+
+        // Move the cumulative ack over the contiguous sequences
+        int contiguous = window.received.nextClearBit(0);
+        if (contiguous > 0) {
+            window.received = window.received.get(contiguous, Math.max(contiguous, window.received.length()));
+            window.cumulative += contiguous;
+        }
+        return true;
+    }
+
+    /**
+     * Register a skip from a peer: the sequences up to it are received or given up by the peer
+     *
+     * @param source   : The socket address of the peer
+     * @param sequence : The sequence to move the cumulative ack to
+     */
+    public synchronized void skip(SocketAddress source, long sequence) {
+        Window window = windows.computeIfAbsent(source, peer -> new Window());
+        if (sequence <= window.cumulative) {
+            return;
+        }
+        if (sequence - window.cumulative >= window.received.length()) {
+            window.received = new BitSet();
+        } else {
+            int shift = (int) (sequence - window.cumulative);
+            window.received = window.received.get(shift, window.received.length());
+        }
+        window.cumulative = sequence;
+
+        // Move the cumulative ack over the contiguous sequences received after the skipped ones
+        int contiguous = window.received.nextClearBit(0);
+        if (contiguous > 0) {
+            window.received = window.received.get(contiguous, Math.max(contiguous, window.received.length()));
+            window.cumulative += contiguous;
+        }
+    }
+
+    /**
+     * Write the ack of a peer: its cumulative sequence and the selective bitmap of the next sequences,
+     * up to the last one received (a single sequence lost doesn't hold the acks of the next ones)
+     *
+     * @param source : The socket address of the peer
+     * @param ack    : The buffer to write into, cleared, of ACK_MAX_SIZE bytes
+     */
+    public synchronized void writeAck(SocketAddress source, ByteBuffer ack) {
+        Window window = windows.get(source);
+        long cumulative = (window == null) ? 0 : window.cumulative;
+        long[] words = (window == null) ? new long[0] : window.received.get(0, SELECTIVE_ACK_SIZE).toLongArray();
+        ack.put(ACK_TAG);
+        putAscii(ack, Long.toString(cumulative));
+        ack.put(HEADER_END);
+        putAscii(ack, Long.toHexString((words.length > 0) ? words[0] : 0));
+        for (int i = 1; i < words.length; i++) {
+            ack.put(WORD_SEPARATOR);
+            putAscii(ack, Long.toHexString(words[i]));
+        }
+        ack.flip();
+    }
+
+    /**
+     * Write an ASCII string into a buffer
+     *
+     * @param buffer : The buffer
+     * @param str    : The ASCII string
+     */
+    static void putAscii(ByteBuffer buffer, String str) {
+        for (int i = 0; i < str.length(); i++) {
+            buffer.put((byte) str.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package fr.tortevois.socket;
+
+import fr.tortevois.utils.SharedTimer;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fr.tortevois.gateway.IGateway.*;
+
+public class ReliableSender {
+
+    // Smoothing factors of the RTT estimation, as for the TCP retransmission timeout (RFC 6298)
+    private final static double ALPHA = 1.0 / 8;
+    private final static double BETA = 1.0 / 4;
+    private final static int DEVIATION_FACTOR = 4;
+
+    private final DatagramChannel channel;
+    private final ByteBuffer skipBuffer = ByteBuffer.allocate(32); // Reused by each skip, under the lock of the sender
+    private final ScheduledFuture<?> retransmitTask; // On the shared timer: the channel is non-blocking
+    // The sequences of a forgotten peer are not reused: the next peers start after them, above any cumulative ack of their receiver
+    private long firstSequence = 0;
+
+    // The send states by peer, the least recently used is forgotten first
+    private final Map<SocketAddress, Peer> peers = new LinkedHashMap<SocketAddress, Peer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SocketAddress, Peer> eldest) {
+            if (size() <= RELIABLE_PEERS_MAX_SIZE) {
+                return false;
+            }
+            Peer peer = eldest.getValue();
+            firstSequence = Math.max(firstSequence, peer.lastSequence);
+            givenUpCount.addAndGet(peer.pendings.size());
+            return true;
+        }
+    };
+
+    // Statistics
+    private final AtomicLong sentCount = new AtomicLong(0);
+    private final AtomicLong retransmittedCount = new AtomicLong(0);
+    private final AtomicLong ackedCount = new AtomicLong(0);
+    private final AtomicLong givenUpCount = new AtomicLong(0);
+
+    /**
+     * The send state of a peer
+     */
+    private static class Peer {
+        private long lastSequence;
+        private long lastTrackedSequence; // The sequences after it are being sent
+        private final TreeMap<Long, Pending> pendings = new TreeMap<>(); // The datagrams not acked yet by sequence
+        private double srtt = -1; // Smoothed RTT, negative without sample
+        private double rttvar = 0;
+        private long rto = RELIABLE_INITIAL_RTO;
+
+        private Peer(long firstSequence) {
+            this.lastSequence = firstSequence;
+            this.lastTrackedSequence = firstSequence;
+        }
+
+        /**
+         * Get the last sequence before the ones still retransmitted: all the previous ones are acked or given up
+         *
+         * @return The sequence
+         */
+        private long getSkipSequence() {
+            return pendings.isEmpty() ? lastTrackedSequence : pendings.firstKey() - 1;
+        }
+    }
+
+    /**
+     * A datagram waiting for its ack
+     */
+    private static class Pending {
+        private final byte[] datagram;
+        private final long firstSendTime;
+        private long lastSendTime;
+        private int retries = 0;
+
+        private Pending(byte[] datagram, long now) {
+            this.datagram = datagram;
+            this.firstSendTime = now;
+            this.lastSendTime = now;
+        }
+    }
+
+    /**
+     * The reliable sender's constructor
+     *
+     * @param channel : The channel used to retransmit the datagrams, and receiving their acks
+     */
+    public ReliableSender(DatagramChannel channel) {
+        this.channel = channel;
+        this.retransmitTask = SharedTimer.getInstance().scheduleAtFixedRate(this::retransmit, RELIABLE_TICK, RELIABLE_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the retransmissions, before the channel is closed
+     */
+    public void close() {
+        retransmitTask.cancel(false);
+    }
+
+    /**
+     * Get the next sequence of a peer
+     *
+     * @param target : The socket address of the peer
+     * @return The sequence
+     */
+    public synchronized long nextSequence(SocketAddress target) {
+        return ++peers.computeIfAbsent(target, peer -> new Peer(firstSequence)).lastSequence;
+    }
+
+    /**
+     * Keep a sent datagram until its ack, the oldest one of the peer is given up if its window is full
+     *
+     * @param target   : The socket address of the peer
+     * @param sequence : The datagram sequence
+     * @param datagram : The datagram, header included
+     */
+    public synchronized void track(SocketAddress target, long sequence, byte[] datagram) {
+        Peer peer = peers.get(target);
+        if (peer == null) {
+            return; // Forgotten since its sequence
+        }
+        if (peer.pendings.size() >= RELIABLE_WINDOW_MAX_SIZE) {
+            peer.pendings.pollFirstEntry();
+            givenUpCount.incrementAndGet();
+            sendSkip(peer, target);
+        }
+        peer.pendings.put(sequence, new Pending(datagram, System.currentTimeMillis()));
+        peer.lastTrackedSequence = sequence;
+        sentCount.incrementAndGet();
+    }
+
+    /**
+     * Handle an ack datagram: release the acked datagrams and sample the RTT
+     *
+     * @param ack    : The ack datagram, flipped
+     * @param source : The socket address of the peer
+     */
+    public void onAck(ByteBuffer ack, SocketAddress source) {
+        long cumulative = ReliableReceiver.readHeader(ack);
+        if (cumulative < 0) {
+            return;
+        }
+        StringBuilder hex = new StringBuilder();
+        while (ack.hasRemaining()) {
+            hex.append((char) ack.get());
+        }
+        String[] hexWords = hex.toString().split(String.valueOf((char) ReliableReceiver.WORD_SEPARATOR));
+        if (hexWords.length > ReliableReceiver.SELECTIVE_ACK_SIZE / Long.SIZE) {
+            return;
+        }
+        long[] words = new long[hexWords.length];
+        try {
+            for (int i = 0; i < words.length; i++) {
+                words[i] = Long.parseUnsignedLong(hexWords[i], 16);
+            }
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Peer peer = peers.get(source);
+            if (peer == null) {
+                return;
+            }
+            Map<Long, Pending> acked = peer.pendings.headMap(cumulative, true);
+            for (Pending pending : acked.values()) {
+                release(peer, pending, now);
+            }
+            acked.clear();
+            for (int word = 0; word < words.length; word++) {
+                long bitmap = words[word];
+                for (int i = word * Long.SIZE; bitmap != 0; i++, bitmap >>>= 1) {
+                    if ((bitmap & 1) != 0) {
+                        Pending pending = peer.pendings.remove(cumulative + 1 + i);
+                        if (pending != null) {
+                            release(peer, pending, now);
+                        }
+                    }
+                }
+            }
+            // The cumulative ack is stuck on a sequence no more retransmitted (given up, or sent before the receiver forgot
+            // its window): the skip is sent again until it is acked, it may be lost
+            if (cumulative < peer.getSkipSequence()) {
+                sendSkip(peer, source);
+            }
+        }
+    }
+
+    /**
+     * Get the sender statistics
+     *
+     * @return The formatted string
+     */
+    public synchronized String getStatistics() {
+        StringBuilder sb = new StringBuilder("Reliable sender: " + sentCount.get() + " sent, " + retransmittedCount.get() + " retransmitted, "
+                + ackedCount.get() + " acked, " + givenUpCount.get() + " given up");
+        for (Map.Entry<SocketAddress, Peer> entry : peers.entrySet()) {
+            Peer peer = entry.getValue();
+            sb.append(String.format("\n  %s: RTO %dms, %d pending", entry.getKey(), peer.rto, peer.pendings.size()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Send a skip to a peer: its cumulative ack is moved over the sequences no more retransmitted
+     *
+     * @param peer   : The peer
+     * @param target : The socket address of the peer
+     */
+    private void sendSkip(Peer peer, SocketAddress target) {
+        skipBuffer.clear();
+        skipBuffer.put(ReliableReceiver.SKIP_TAG);
+        ReliableReceiver.putAscii(skipBuffer, Long.toString(peer.getSkipSequence()));
+        skipBuffer.put(ReliableReceiver.HEADER_END);
+        skipBuffer.flip();
+        try {
+            channel.send(skipBuffer, target);
+        } catch (IOException e) {
+            System.err.println("Unable to send the skip: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Release an acked datagram, its RTT is sampled if it was sent only once (Karn's algorithm)
+     *
+     * @param peer    : The peer
+     * @param pending : The acked datagram
+     * @param now     : The current time
+     */
+    private void release(Peer peer, Pending pending, long now) {
+        ackedCount.incrementAndGet();
+        if (pending.retries > 0) {
+            return;
+        }
+        long rtt = now - pending.firstSendTime;
+        if (peer.srtt < 0) {
+            peer.srtt = rtt;
+            peer.rttvar = rtt / 2.0;
+        } else {
+            peer.rttvar = (1 - BETA) * peer.rttvar + BETA * Math.abs(peer.srtt - rtt);
+            peer.srtt = (1 - ALPHA) * peer.srtt + ALPHA * rtt;
+        }
+        long rto = (long) Math.ceil(peer.srtt + DEVIATION_FACTOR * peer.rttvar);
+        peer.rto = Math.min(RELIABLE_MAX_RTO, Math.max(RELIABLE_MIN_RTO, rto));
+    }
+
+    /**
+     * Retransmit the datagrams not acked within the RTO of their peer (doubled on each retry)
+     */
+    private void retransmit() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Map.Entry<SocketAddress, Peer> entry : peers.entrySet()) {
+                Peer peer = entry.getValue();
+                boolean hasGivenUp = false;
+                Iterator<Pending> iterator = peer.pendings.values().iterator();
+                while (iterator.hasNext()) {
+                    Pending pending = iterator.next();
+                    if (now - pending.lastSendTime < Math.min(RELIABLE_MAX_RTO, peer.rto << pending.retries)) {
+                        continue;
+                    }
+                    if (pending.retries >= RELIABLE_MAX_RETRIES) {
+                        iterator.remove();
+                        givenUpCount.incrementAndGet();
+                        hasGivenUp = true;
+                        continue;
+                    }
+                    pending.retries++;
+                    pending.lastSendTime = now;
+                    retransmittedCount.incrementAndGet();
+                    try {
+                        channel.send(ByteBuffer.wrap(pending.datagram), entry.getKey());
+                    } catch (IOException e) {
+                        System.err.println("Unable to retransmit the message: " + e.getMessage());
+                    }
+                }
+                if (hasGivenUp) {
+                    sendSkip(peer, entry.getKey());
+                }
+            }
+        }
+    }
+}
@@ -1,57 +1,273 @@
 package fr.tortevois.socket;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static fr.tortevois.gateway.IGateway.*;
 import static fr.tortevois.utils.Utils.OUT;
 import static fr.tortevois.utils.Utils.printTrace;
 
-public class SendingSocket {
+public class SendingSocket implements DatagramHandler {
 
     private final static boolean DEBUG = false;
-    private DatagramSocket socket;
+    private DatagramChannel channel;
+    private ReliableSender reliableSender = null; // null without reliable delivery
+    private long lastMessageID = 0; // The last fragmented message
+
+    // Reused by each send, under the lock of the socket: the payload is written after the room of the header
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_MAX_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // Statistics
+    private final AtomicLong droppedCount = new AtomicLong(0);
 
     /**
-     * SendingSocket's constructor : open a DatagramSocket
+     * SendingSocket's constructor : open an unconnected DatagramChannel
+     * (a gateway sends to its parent and to its children through the same socket)
      */
     public SendingSocket() {
         // Create the socket
         try {
-            socket = new DatagramSocket();
-        } catch (SocketException e) {
+            channel = DatagramChannel.open();
+            if (RELIABLE_DELIVERY) {
+                // The acks are received on the same channel, by the receive engine
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+                channel.bind(null);
+                channel.configureBlocking(false);
+                reliableSender = new ReliableSender(channel);
+                ReceiveEngine.getInstance().register(this);
+            }
+        } catch (IOException e) {
             System.err.println("Unable to create the socket: " + e.getMessage());
             System.exit(-1);
         }
     }
 
     /**
-     * Send a message at the specified address, port through the Socket
+     * Get the channel, for its registration in the receive engine
+     *
+     * @return The datagram channel
+     */
+    public DatagramChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Handle a received datagram: only the acks of the reliable datagrams are expected
+     *
+     * @param datagram : The datagram, flipped, only valid during the call
+     * @param source   : The socket address of the sender
+     */
+    public void onDatagram(ByteBuffer datagram, SocketAddress source) {
+        if (datagram.hasRemaining() && datagram.get(datagram.position()) == ReliableReceiver.ACK_TAG) {
+            reliableSender.onAck(datagram, source);
+        }
+    }
+
+    /**
+     * Send a message at the specified address, port through the Socket, without reliable delivery
+     * (for a node outside the tree, waiting for its node ID on a plain socket)
      *
      * @param msg : The string message to send
      * @param address : Destination IP address
      * @param port : Destination port
      */
     public void send(String msg, InetAddress address, int port) {
-        // Create the buffered message
-        byte[] buffer = msg.getBytes();
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, address, port);
+        send(msg, new InetSocketAddress(address, port), false);
+    }
 
-        // Send the buffered message
-        try {
-            socket.send(packet);
-            printTrace(DEBUG, OUT, "ClientSocket.send: " + msg);
-        } catch (IOException e) {
-            System.err.println("Unable to send the message: " + e.getMessage());
+    /**
+     * Send a message at the specified socket address of a node of the tree
+     *
+     * @param msg    : The string message to send
+     * @param target : Destination socket address
+     */
+    public void send(String msg, SocketAddress target) {
+        send(msg, target, RELIABLE_DELIVERY);
+    }
+
+    /**
+     * Send a message at the specified socket address, encoded in UTF-8 into the buffer of the socket
+     *
+     * @param msg        : The string message to send
+     * @param target     : Destination socket address
+     * @param isReliable : true to sequence the message and retransmit it until its ack
+     */
+    private synchronized void send(String msg, SocketAddress target, boolean isReliable) {
+        // Encode the message
+        buffer.clear();
+        buffer.position(DATAGRAM_HEADER_MAX_SIZE);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(msg), buffer, true);
+        if (result.isOverflow()) {
+            sendFragments(msg.getBytes(StandardCharsets.UTF_8), target, isReliable);
+            return;
+        }
+        encoder.flush(buffer);
+
+        transmit(target, DATAGRAM_HEADER_MAX_SIZE, isReliable);
+        printTrace(DEBUG, OUT, "ClientSocket.send: " + msg);
+    }
+
+    /**
+     * Send the bytes of a buffer as they are, from its position to its limit (the position is moved to the limit)
+     *
+     * @param bytes  : The encoded message, a received datagram to forward for instance
+     * @param target : Destination socket address
+     */
+    public synchronized void send(ByteBuffer bytes, SocketAddress target) {
+        if (bytes.remaining() > BUFFER_MAX_SIZE - DATAGRAM_HEADER_MAX_SIZE) {
+            byte[] message = new byte[bytes.remaining()];
+            bytes.get(message);
+            sendFragments(message, target, RELIABLE_DELIVERY);
+            return;
+        }
+        if (reliableSender == null && !(target instanceof NodeAddress)) {
+            sendDatagram(bytes, target);
+            return;
+        }
+        // The headers are written before the bytes: copy them in the buffer of the socket
+        buffer.clear();
+        buffer.position(DATAGRAM_HEADER_MAX_SIZE);
+        buffer.put(bytes);
+        transmit(target, DATAGRAM_HEADER_MAX_SIZE, true);
+    }
+
+    /**
+     * Get the socket statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        String statistics = "Sending socket: " + droppedCount.get() + " dropped on a full socket buffer";
+        if (reliableSender != null) {
+            statistics += "\n" + reliableSender.getStatistics();
         }
+        return statistics;
     }
 
     /**
      * Close the socket
      */
     public void close() {
-        socket.close();
+        if (reliableSender != null) {
+            reliableSender.close();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Unable to close the socket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Send a message larger than a datagram in several fragments, reassembled by the receiver
+     *
+     * @param bytes      : The UTF-8 encoded message
+     * @param target     : Destination socket address
+     * @param isReliable : true to sequence the fragments and retransmit them until their ack
+     */
+    private void sendFragments(byte[] bytes, SocketAddress target, boolean isReliable) {
+        int fragmentSize = BUFFER_MAX_SIZE - DATAGRAM_HEADER_MAX_SIZE;
+        int count = (bytes.length + fragmentSize - 1) / fragmentSize;
+        if (count > FRAGMENTS_MAX_COUNT) {
+            System.err.println("Unable to send the message: larger than " + FRAGMENTS_MAX_COUNT + " fragments");
+            return;
+        }
+        long messageID = ++lastMessageID;
+        for (int index = 0; index < count; index++) {
+            int offset = index * fragmentSize;
+            buffer.clear();
+            buffer.position(DATAGRAM_HEADER_MAX_SIZE);
+            buffer.put(bytes, offset, Math.min(fragmentSize, bytes.length - offset));
+
+            // Write the header "F<message ID>.<index>.<count>|" backward, just before the fragment
+            int start = DATAGRAM_HEADER_MAX_SIZE;
+            buffer.put(--start, ReliableReceiver.HEADER_END);
+            start = putDecimalBackward(start, count);
+            buffer.put(--start, Reassembler.FIELD_SEPARATOR);
+            start = putDecimalBackward(start, index);
+            buffer.put(--start, Reassembler.FIELD_SEPARATOR);
+            start = putDecimalBackward(start, messageID);
+            buffer.put(--start, Reassembler.FRAGMENT_TAG);
+            transmit(target, start, isReliable);
+        }
+    }
+
+    /**
+     * Write a decimal value in the buffer, backward from a position
+     *
+     * @param start : The position after the last digit
+     * @param value : The positive value
+     * @return The position of the first digit
+     */
+    private int putDecimalBackward(int start, long value) {
+        do {
+            buffer.put(--start, (byte) ('0' + value % 10));
+            value /= 10;
+        } while (value > 0);
+        return start;
+    }
+
+    /**
+     * Send the datagram written in the buffer from a position to the current one, under the lock of the socket
+     *
+     * @param target     : Destination socket address, or the node address on a multiplexed host
+     * @param start      : The position of the datagram, DATAGRAM_HEADER_MAX_SIZE or the position of its fragment header
+     * @param isReliable : true to sequence the datagram and retransmit it until its ack
+     */
+    private void transmit(SocketAddress target, int start, boolean isReliable) {
+        int end = buffer.position();
+        if (target instanceof NodeAddress) {
+            // Write the header "N<node ID>|" backward, the datagram is sent to the socket of the host
+            NodeAddress node = (NodeAddress) target;
+            buffer.put(--start, ReliableReceiver.HEADER_END);
+            start = putDecimalBackward(start, node.getNodeID());
+            buffer.put(--start, NodeAddress.NODE_TAG);
+            target = node.getHostAddress();
+        }
+        if (isReliable && reliableSender != null) {
+            // Write the header "R<sequence>|" backward, just before the datagram
+            long sequence = reliableSender.nextSequence(target);
+            buffer.put(--start, ReliableReceiver.HEADER_END);
+            start = putDecimalBackward(start, sequence);
+            buffer.put(--start, ReliableReceiver.RELIABLE_TAG);
+
+            byte[] datagram = new byte[end - start];
+            buffer.position(start);
+            buffer.get(datagram);
+            reliableSender.track(target, sequence, datagram);
+        }
+        buffer.limit(end).position(start);
+        sendDatagram(buffer, target);
+    }
+
+    /**
+     * Send a datagram, dropped if the socket buffer is full (a reliable datagram is retransmitted later)
+     *
+     * @param datagram : The datagram, from its position to its limit
+     * @param target   : Destination socket address
+     */
+    private void sendDatagram(ByteBuffer datagram, SocketAddress target) {
+        try {
+            if (channel.send(datagram, target) == 0) {
+                droppedCount.incrementAndGet();
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to send the message: " + e.getMessage());
+        }
     }
 }
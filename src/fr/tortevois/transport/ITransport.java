@@ -0,0 +1,81 @@
+package fr.tortevois.transport;
+
+import fr.tortevois.distributor.Distributor;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.function.IntFunction;
+
+public interface ITransport {
+
+    /**
+     * Listen for the messages to a node: they are processed by the distributor
+     *
+     * @param distributor : The distributor of the node
+     * @param nodeID      : The node ID
+     */
+    void listen(Distributor distributor, int nodeID);
+
+    /**
+     * Get the port shared by the nodes of the host, given to the parent gateway at the join
+     *
+     * @return The port, or NodeAddress.NO_HOST_PORT if each node listens on its own port
+     */
+    int getHostPort();
+
+    /**
+     * Check if the transport carries the binary frames
+     *
+     * @return The boolean status
+     */
+    boolean isBinarySupported();
+
+    /**
+     * Send a message to a node of the tree
+     *
+     * @param msg    : The string message to send
+     * @param target : Destination socket address
+     */
+    void send(String msg, SocketAddress target);
+
+    /**
+     * Send an encoded message to a node of the tree, as it is
+     *
+     * @param frame  : The UTF-8 encoded message, from its position to its limit (the position is moved to the limit)
+     * @param target : Destination socket address
+     */
+    void send(ByteBuffer frame, SocketAddress target);
+
+    /**
+     * Send a request from a node outside the tree, and wait for its reply on an ephemeral port
+     * (the request is sent again, with a longer timeout, until its reply or JOIN_MAX_ATTEMPTS)
+     *
+     * @param request : The request builder, from the ephemeral reply port
+     * @param target  : Destination socket address
+     * @param token   : The correlation token of the request, the replies without it are ignored
+     * @return The reply
+     * @throws IOException
+     */
+    String request(IntFunction<String> request, SocketAddress target, String token) throws IOException;
+
+    /**
+     * Reply to a node outside the tree, waiting in request()
+     *
+     * @param msg    : The string reply to send
+     * @param target : The socket address of the waiting node
+     */
+    void reply(String msg, SocketAddress target);
+
+    /**
+     * Get the transport statistics
+     *
+     * @return The formatted string
+     */
+    String getStatistics();
+
+    /**
+     * Close the transport
+     */
+    void close();
+}
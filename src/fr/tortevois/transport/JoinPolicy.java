@@ -0,0 +1,24 @@
+package fr.tortevois.transport;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static fr.tortevois.gateway.IGateway.JOIN_INITIAL_TIMEOUT;
+import static fr.tortevois.gateway.IGateway.JOIN_MAX_TIMEOUT;
+
+final class JoinPolicy {
+
+    private JoinPolicy() {
+    }
+
+    /**
+     * Get the time to wait for the reply to an attempt of a join request: doubled on each attempt, up to JOIN_MAX_TIMEOUT,
+     * plus a random part (the nodes restarted together after a power cycle don't send again all at the same time)
+     *
+     * @param attempt : The attempt, from 0
+     * @return The timeout in milliseconds
+     */
+    static int getTimeout(int attempt) {
+        int timeout = Math.min(JOIN_INITIAL_TIMEOUT << Math.min(attempt, 16), JOIN_MAX_TIMEOUT);
+        return timeout + ThreadLocalRandom.current().nextInt(timeout / 2 + 1);
+    }
+}
@@ -0,0 +1,243 @@
+package fr.tortevois.transport;
+
+import fr.tortevois.distributor.Distributor;
+import fr.tortevois.socket.FrameBatcher;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import static fr.tortevois.distributor.Distributor.INITIAL_SOCKET_PORT;
+import static fr.tortevois.gateway.IGateway.JOIN_MAX_ATTEMPTS;
+import static fr.tortevois.gateway.IGateway.PROCESSING_WORKERS;
+import static fr.tortevois.socket.NodeAddress.NO_HOST_PORT;
+
+public class LoopbackTransport implements ITransport {
+
+    // The mailboxes of the whole process by port: the nodes of a tree run in the same JVM, the host is ignored
+    private final static Map<Integer, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final static ExecutorService workers;
+    // The ports of the requests, as the IANA dynamic ports range
+    private final static int EPHEMERAL_PORT_MIN = 49152;
+    private final static int EPHEMERAL_PORT_MAX = 65535;
+    private final static AtomicInteger nextEphemeralPort = new AtomicInteger(0);
+
+    static {
+        AtomicInteger threadsCount = new AtomicInteger(0);
+        workers = Executors.newFixedThreadPool(PROCESSING_WORKERS, runnable -> {
+            Thread thread = new Thread(runnable, "LoopbackWorker-" + threadsCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final List<Integer> ports = new CopyOnWriteArrayList<>(); // The ports listened by this transport
+
+    // Statistics
+    private final AtomicLong sentCount = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+
+    /**
+     * The messages waiting for a port, processed in order by one worker at a time
+     */
+    private static class Mailbox implements Runnable {
+        private final Queue<String> messages = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+        private final Consumer<String> consumer;
+
+        private Mailbox(Consumer<String> consumer) {
+            this.consumer = consumer;
+        }
+
+        /**
+         * Post a message, and schedule the mailbox on a worker if it is idle
+         *
+         * @param msg : The message, one or several frames
+         */
+        private void post(String msg) {
+            messages.add(msg);
+            schedule();
+        }
+
+        /**
+         * Schedule the mailbox on a worker, unless it is already
+         */
+        private void schedule() {
+            if (isScheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+
+        /**
+         * Process the waiting messages
+         */
+        public void run() {
+            String msg;
+            while ((msg = messages.poll()) != null) {
+                // A message from a batching gateway holds several frames
+                for (String frame : FrameBatcher.unpack(msg)) {
+                    try {
+                        consumer.accept(frame);
+                    } catch (RuntimeException e) {
+                        System.err.println("Unable to process the message: " + e);
+                    }
+                }
+            }
+            isScheduled.set(false);
+            // A message may be posted between the last poll and the reset of the flag
+            if (!messages.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Listen on the port of a node
+     *
+     * @param distributor : The distributor of the node
+     * @param nodeID      : The node ID, the port is INITIAL_SOCKET_PORT + node ID
+     */
+    public void listen(Distributor distributor, int nodeID) {
+        int port = INITIAL_SOCKET_PORT + nodeID;
+        if (mailboxes.putIfAbsent(port, new Mailbox(distributor::messageProcessing)) != null) {
+            System.err.println("Unable to create the socket: the loopback port " + port + " is already used");
+            System.exit(-1);
+        }
+        ports.add(port);
+    }
+
+    /**
+     * Get the port shared by the nodes of the host
+     *
+     * @return NO_HOST_PORT, each node has its own mailbox
+     */
+    public int getHostPort() {
+        return NO_HOST_PORT;
+    }
+
+    /**
+     * Check if the transport carries the binary frames
+     *
+     * @return false, the mailboxes carry strings
+     */
+    public boolean isBinarySupported() {
+        return false;
+    }
+
+    /**
+     * Post a message to a node of the tree
+     *
+     * @param msg    : The string message to send
+     * @param target : Destination socket address
+     */
+    public void send(String msg, SocketAddress target) {
+        Mailbox mailbox = mailboxes.get(((InetSocketAddress) target).getPort());
+        if (mailbox == null) {
+            droppedCount.incrementAndGet(); // As a datagram sent to a closed UDP port
+            return;
+        }
+        sentCount.incrementAndGet();
+        mailbox.post(msg);
+    }
+
+    /**
+     * Post an encoded message to a node of the tree
+     *
+     * @param frame  : The UTF-8 encoded message, from its position to its limit (the position is moved to the limit)
+     * @param target : Destination socket address
+     */
+    public void send(ByteBuffer frame, SocketAddress target) {
+        send(StandardCharsets.UTF_8.decode(frame).toString(), target);
+    }
+
+    /**
+     * Post a request from a node outside the tree, and wait for its reply on an ephemeral port
+     *
+     * @param request : The request builder, from the ephemeral reply port
+     * @param target  : Destination socket address
+     * @param token   : The correlation token of the request, the replies without it are ignored
+     * @return The reply
+     * @throws IOException
+     */
+    public String request(IntFunction<String> request, SocketAddress target, String token) throws IOException {
+        BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+        Mailbox mailbox = new Mailbox(replies::add);
+        int replyPort = bindEphemeralPort(mailbox);
+        try {
+            String msg = request.apply(replyPort);
+            for (int attempt = 0; attempt < JOIN_MAX_ATTEMPTS; attempt++) {
+                // The gateway may not listen yet
+                send(msg, target);
+                long deadline = System.currentTimeMillis() + JoinPolicy.getTimeout(attempt);
+                String reply;
+                while ((reply = replies.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    if (reply.contains(token)) {
+                        return reply;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            mailboxes.remove(replyPort, mailbox);
+        }
+        throw new SocketTimeoutException("No reply after " + JOIN_MAX_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Bind a mailbox on a free port of the ephemeral range
+     *
+     * @param mailbox : The mailbox
+     * @return The port
+     */
+    private static int bindEphemeralPort(Mailbox mailbox) {
+        while (true) {
+            int port = EPHEMERAL_PORT_MIN + Math.floorMod(nextEphemeralPort.getAndIncrement(), EPHEMERAL_PORT_MAX + 1 - EPHEMERAL_PORT_MIN);
+            if (mailboxes.putIfAbsent(port, mailbox) == null) {
+                return port;
+            }
+        }
+    }
+
+    /**
+     * Reply to a node outside the tree, waiting in request()
+     *
+     * @param msg    : The string reply to send
+     * @param target : The socket address of the waiting node
+     */
+    public void reply(String msg, SocketAddress target) {
+        send(msg, target);
+    }
+
+    /**
+     * Get the transport statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        return "Loopback transport " + ports + ": " + sentCount.get() + " sent, " + droppedCount.get() + " dropped, "
+                + mailboxes.size() + " ports in the process";
+    }
+
+    /**
+     * Close the ports listened by this transport
+     */
+    public void close() {
+        for (int port : ports) {
+            mailboxes.remove(port);
+        }
+        ports.clear();
+    }
+}
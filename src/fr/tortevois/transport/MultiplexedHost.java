@@ -0,0 +1,80 @@
+package fr.tortevois.transport;
+
+import fr.tortevois.distributor.Distributor;
+import fr.tortevois.socket.ListeningSocket;
+import fr.tortevois.socket.ReceiveEngine;
+import fr.tortevois.socket.SendingSocket;
+
+public class MultiplexedHost {
+
+    private final int port;
+    private final ListeningSocket listeningSocket;
+    private final SendingSocket sendingSocket = new SendingSocket();
+
+    /**
+     * The multiplexed host's constructor : one listening socket and one sending socket for all the nodes of the process
+     *
+     * @param port : The port shared by the nodes of the host
+     */
+    public MultiplexedHost(int port) {
+        this.port = port;
+        this.listeningSocket = new ListeningSocket(port);
+    }
+
+    /**
+     * Get the port shared by the nodes of the host
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the sending socket shared by the nodes of the host
+     *
+     * @return The sending socket
+     */
+    SendingSocket getSendingSocket() {
+        return sendingSocket;
+    }
+
+    /**
+     * Add a node to the demultiplexing table of the host
+     *
+     * @param nodeID      : The node ID
+     * @param distributor : The distributor of the node
+     */
+    void register(int nodeID, Distributor distributor) {
+        if (!listeningSocket.register(nodeID, distributor)) {
+            System.err.println("Unable to host the node " + nodeID + ": it is already hosted on port " + port);
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Remove a node from the demultiplexing table of the host
+     *
+     * @param nodeID : The node ID
+     */
+    void unregister(int nodeID) {
+        listeningSocket.unregister(nodeID);
+    }
+
+    /**
+     * Get the host statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        return listeningSocket.getStatistics() + "\n" + sendingSocket.getStatistics() + "\n" + ReceiveEngine.getInstance().getStatistics();
+    }
+
+    /**
+     * Close the sockets of the host
+     */
+    public void close() {
+        listeningSocket.close();
+        sendingSocket.close();
+    }
+}
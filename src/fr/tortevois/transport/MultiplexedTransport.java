@@ -0,0 +1,113 @@
+package fr.tortevois.transport;
+
+import fr.tortevois.distributor.Distributor;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.function.IntFunction;
+
+public class MultiplexedTransport implements ITransport {
+
+    private final MultiplexedHost host;
+    private int nodeID = -1; // Until the node listens
+
+    /**
+     * The multiplexed transport's constructor : the node shares the sockets of its host with the other nodes of the process
+     *
+     * @param host : The host of the node
+     */
+    public MultiplexedTransport(MultiplexedHost host) {
+        this.host = host;
+    }
+
+    /**
+     * Listen for the messages to a node, with its node header, on the port of the host
+     *
+     * @param distributor : The distributor of the node
+     * @param nodeID      : The node ID
+     */
+    public void listen(Distributor distributor, int nodeID) {
+        host.register(nodeID, distributor);
+        this.nodeID = nodeID;
+    }
+
+    /**
+     * Get the port shared by the nodes of the host
+     *
+     * @return The port of the host
+     */
+    public int getHostPort() {
+        return host.getPort();
+    }
+
+    /**
+     * Check if the transport carries the binary frames
+     *
+     * @return true, the listening socket of the host decodes the binary frames
+     */
+    public boolean isBinarySupported() {
+        return true;
+    }
+
+    /**
+     * Send a message to a node of the tree
+     *
+     * @param msg    : The string message to send
+     * @param target : Destination socket address, a NodeAddress for a node on a multiplexed host
+     */
+    public void send(String msg, SocketAddress target) {
+        host.getSendingSocket().send(msg, target);
+    }
+
+    /**
+     * Send an encoded message to a node of the tree, as it is
+     *
+     * @param frame  : The UTF-8 encoded message, from its position to its limit (the position is moved to the limit)
+     * @param target : Destination socket address, a NodeAddress for a node on a multiplexed host
+     */
+    public void send(ByteBuffer frame, SocketAddress target) {
+        host.getSendingSocket().send(frame, target);
+    }
+
+    /**
+     * Send a request from a node outside the tree, and wait for its reply on an ephemeral plain UDP socket
+     *
+     * @param request : The request builder, from the ephemeral reply port
+     * @param target  : Destination socket address
+     * @param token   : The correlation token of the request, the replies without it are ignored
+     * @return The reply
+     * @throws IOException
+     */
+    public String request(IntFunction<String> request, SocketAddress target, String token) throws IOException {
+        return UdpTransport.request(host.getSendingSocket(), request, target, token);
+    }
+
+    /**
+     * Reply to a node outside the tree, without reliable delivery (it waits on a plain UDP socket)
+     *
+     * @param msg    : The string reply to send
+     * @param target : The socket address of the waiting node
+     */
+    public void reply(String msg, SocketAddress target) {
+        UdpTransport.reply(host.getSendingSocket(), msg, target);
+    }
+
+    /**
+     * Get the transport statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        return "Node " + nodeID + " on the multiplexed host\n" + host.getStatistics();
+    }
+
+    /**
+     * Remove the node from its host, the sockets stay open for the other nodes
+     */
+    public void close() {
+        if (nodeID != -1) {
+            host.unregister(nodeID);
+        }
+    }
+}
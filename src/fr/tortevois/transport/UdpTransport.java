@@ -0,0 +1,178 @@
+package fr.tortevois.transport;
+
+import fr.tortevois.distributor.Distributor;
+import fr.tortevois.socket.ListeningSocket;
+import fr.tortevois.socket.ReceiveEngine;
+import fr.tortevois.socket.SendingSocket;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntFunction;
+
+import static fr.tortevois.distributor.Distributor.INITIAL_SOCKET_PORT;
+import static fr.tortevois.gateway.IGateway.BUFFER_MAX_SIZE;
+import static fr.tortevois.gateway.IGateway.JOIN_MAX_ATTEMPTS;
+import static fr.tortevois.socket.NodeAddress.NO_HOST_PORT;
+import static fr.tortevois.utils.Utils.ERR;
+import static fr.tortevois.utils.Utils.printTrace;
+
+public class UdpTransport implements ITransport {
+
+    private final static boolean DEBUG = false;
+    private final SendingSocket sendingSocket = new SendingSocket();
+    private ListeningSocket listeningSocket = null;
+
+    /**
+     * Listen on the UDP port of a node, read by the receive engine shared with the other nodes of the process
+     *
+     * @param distributor : The distributor of the node
+     * @param nodeID      : The node ID, the port is INITIAL_SOCKET_PORT + node ID
+     */
+    public void listen(Distributor distributor, int nodeID) {
+        listeningSocket = new ListeningSocket(distributor, INITIAL_SOCKET_PORT + nodeID);
+    }
+
+    /**
+     * Get the port shared by the nodes of the host
+     *
+     * @return NO_HOST_PORT, each node listens on its own port
+     */
+    public int getHostPort() {
+        return NO_HOST_PORT;
+    }
+
+    /**
+     * Check if the transport carries the binary frames
+     *
+     * @return true, the listening socket decodes the binary frames
+     */
+    public boolean isBinarySupported() {
+        return true;
+    }
+
+    /**
+     * Send a message to a node of the tree
+     *
+     * @param msg    : The string message to send
+     * @param target : Destination socket address
+     */
+    public void send(String msg, SocketAddress target) {
+        sendingSocket.send(msg, target);
+    }
+
+    /**
+     * Send an encoded message to a node of the tree, as it is
+     *
+     * @param frame  : The UTF-8 encoded message, from its position to its limit (the position is moved to the limit)
+     * @param target : Destination socket address
+     */
+    public void send(ByteBuffer frame, SocketAddress target) {
+        sendingSocket.send(frame, target);
+    }
+
+    /**
+     * Send a request from a node outside the tree, and wait for its reply on an ephemeral plain UDP socket
+     *
+     * @param request : The request builder, from the ephemeral reply port
+     * @param target  : Destination socket address
+     * @param token   : The correlation token of the request, the replies without it are ignored
+     * @return The reply
+     * @throws IOException
+     */
+    public String request(IntFunction<String> request, SocketAddress target, String token) throws IOException {
+        return request(sendingSocket, request, target, token);
+    }
+
+    /**
+     * Send a request through a sending socket, and wait for its reply on an ephemeral plain UDP socket
+     *
+     * @param sendingSocket : The sending socket
+     * @param request       : The request builder, from the ephemeral reply port
+     * @param target        : Destination socket address
+     * @param token         : The correlation token of the request, the replies without it are ignored
+     * @return The reply
+     * @throws IOException
+     */
+    static String request(SendingSocket sendingSocket, IntFunction<String> request, SocketAddress target, String token) throws IOException {
+        // An ephemeral port: the nodes of a host join in parallel. Close it after the reply
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            String msg = request.apply(socket.getLocalPort());
+            byte[] buffer = new byte[BUFFER_MAX_SIZE];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            for (int attempt = 0; attempt < JOIN_MAX_ATTEMPTS; attempt++) {
+                sendingSocket.send(msg, target);
+                long deadline = System.currentTimeMillis() + JoinPolicy.getTimeout(attempt);
+                long remaining;
+                while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+                    socket.setSoTimeout((int) remaining);
+                    packet.setLength(buffer.length);
+                    try {
+                        socket.receive(packet);
+                    } catch (SocketTimeoutException e) {
+                        break;
+                    }
+                    String reply = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+                    if (reply.contains(token)) {
+                        return reply;
+                    }
+                    printTrace(DEBUG, ERR, "UdpTransport.request: reply without the token, ignore " + reply);
+                }
+                printTrace(DEBUG, ERR, "UdpTransport.request: no reply to the attempt " + (attempt + 1) + ", send again");
+            }
+        }
+        throw new SocketTimeoutException("No reply after " + JOIN_MAX_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Reply to a node outside the tree, without reliable delivery (it waits on a plain UDP socket)
+     *
+     * @param msg    : The string reply to send
+     * @param target : The socket address of the waiting node
+     */
+    public void reply(String msg, SocketAddress target) {
+        reply(sendingSocket, msg, target);
+    }
+
+    /**
+     * Reply through a sending socket to a node outside the tree, without reliable delivery
+     *
+     * @param sendingSocket : The sending socket
+     * @param msg           : The string reply to send
+     * @param target        : The socket address of the waiting node
+     */
+    static void reply(SendingSocket sendingSocket, String msg, SocketAddress target) {
+        InetSocketAddress address = (InetSocketAddress) target;
+        sendingSocket.send(msg, address.getAddress(), address.getPort());
+    }
+
+    /**
+     * Get the transport statistics
+     *
+     * @return The formatted string
+     */
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        if (listeningSocket != null) {
+            sb.append(listeningSocket.getStatistics()).append("\n");
+        }
+        sb.append(sendingSocket.getStatistics()).append("\n");
+        sb.append(ReceiveEngine.getInstance().getStatistics());
+        return sb.toString();
+    }
+
+    /**
+     * Close the sockets
+     */
+    public void close() {
+        if (listeningSocket != null) {
+            listeningSocket.close();
+        }
+        sendingSocket.close();
+    }
+}
@@ -0,0 +1,33 @@
+package fr.tortevois.utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+public class SharedTimer {
+
+    // -- Singleton -------------------------------------------------------------------------------------------------------------
+
+    private static ScheduledExecutorService instance = null;
+
+    private SharedTimer() {
+    }
+
+    /**
+     * Get the timer shared by all the nodes of the process, a single daemon thread started on the first call
+     * The tasks must be short and never block: they delay all the other ones
+     *
+     * @return The timer
+     */
+    public static synchronized ScheduledExecutorService getInstance() {
+        if (instance == null) {
+            instance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "SharedTimer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return instance;
+    }
+
+    // --------------------------------------------------------------------------------------------------------------------------
+}
@@ -162,6 +162,7 @@ public final class Utils {
      * @return The integer value
      */
     public static int jsonGetToInteger(String key, JSONObject json) {
-        return (int) ((long) json.get(key));
+        // A parsed JSON holds Long values, a JSON built locally may hold Integer values
+        return ((Number) json.get(key)).intValue();
     }
 }